@@ -0,0 +1,13 @@
+class ActionNode implements ProgramNode{
+    final ProgramNode action;
+    
+    public ActionNode(ProgramNode action){this.action = action;}
+
+    public void execute(Robot robot){
+        robot.countNode();
+        action.execute(robot);
+    }
+    
+    public String toString(){return action.toString() + ";";}
+    
+}
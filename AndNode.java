@@ -0,0 +1,19 @@
+class AndNode implements BooleanNode{
+    BooleanNode cond1;
+    BooleanNode cond2;
+    
+    public AndNode(BooleanNode cond1, BooleanNode cond2){
+        this.cond1 = cond1;
+        this.cond2 = cond2;
+    }
+    
+    public boolean evaluate(Robot robot){
+        robot.countNode();
+        return (cond1.evaluate(robot) && cond2.evaluate(robot));
+    }
+    
+    public String toString(){
+        return "and(" + cond1.toString() + "," + cond2.toString();
+    }
+    
+}
@@ -0,0 +1,44 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The images in RoboGame.ASSET_DIRECTORY, each read the first time it is
+ * drawn and then shared by every robot and world. Nothing is read for a
+ * world that is never drawn, such as one played by a Match.
+ *
+ * An image that can not be read is reported once and then remembered as
+ * missing, rather than being looked for again on every frame; callers skip
+ * drawing it.
+ */
+public class Assets {
+
+    private static final BufferedImage MISSING = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    private static final Map<String, BufferedImage> images = new ConcurrentHashMap<>();
+
+    private Assets() {
+    }
+
+    /** The named image, or null if it could not be read */
+    public static BufferedImage get(String name) {
+        BufferedImage image = images.computeIfAbsent(name, Assets::read);
+        return (image == MISSING) ? null : image;
+    }
+
+    private static BufferedImage read(String name) {
+        File file = new File(RoboGame.ASSET_DIRECTORY + name);
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image != null)
+                return image;
+            System.err.println("Image " + file + " is not in a format that can be read");
+        } catch (IOException e) {
+            System.err.println("Image " + file + " could not be read: " + e.getMessage());
+        }
+        return MISSING;
+    }
+}
@@ -0,0 +1,19 @@
+class AssgnNode implements ProgramNode{
+    String variable;
+    IntNode num;
+    
+    public AssgnNode(String variable, IntNode num){
+        this.variable = variable;
+        this.num = num;
+        
+    }
+    public void execute(Robot robot){
+        robot.countNode();
+        robot.variables.put(this.variable, num.evaluate(robot));
+        
+    }
+    
+    public String toString(){
+        return variable + "=" + num.toString() + ";";
+    }
+}
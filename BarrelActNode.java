@@ -0,0 +1,17 @@
+// The Robot.ACTION_ code of the first step on that path
+class BarrelActNode implements IntNode{
+    IntNode num;
+    
+    public BarrelActNode(IntNode num){
+        this.num = num;
+    }
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        return robot.getBarrelAction((num == null) ? 0 : num.evaluate(robot));
+    }
+    
+    public String toString(){
+        return (num != null) ? "barrelAct(" + num.toString() + ")" : "barrelAct";
+    }
+}
@@ -0,0 +1,17 @@
+// Turns to the barrel along the shortest path around the other robot (see PathTable)
+class BarrelDistNode implements IntNode{
+    IntNode num;
+    
+    public BarrelDistNode(IntNode num){
+        this.num = num;
+    }
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        return robot.getBarrelDistance((num == null) ? 0 : num.evaluate(robot));
+    }
+    
+    public String toString(){
+        return (num != null) ? "barrelDist(" + num.toString() + ")" : "barrelDist";
+    }
+}
@@ -0,0 +1,24 @@
+class BarrelFbNode implements IntNode{
+    IntNode num;
+    
+    public BarrelFbNode(IntNode num){
+        this.num = num;
+    }
+    
+    public int evaluate(Robot robot){robot.countNode(); if (this.num == null){
+            return robot.getClosestBarrelFB();
+        }
+        else{
+            return robot.getBarrelFB(num.evaluate(robot));
+        }
+    }
+    
+    public String toString(){
+        if (num != null){
+            return "barrelFB(" + num.toString() + ")";
+        }
+        else{
+            return "barrelFB";
+        }
+    }
+}
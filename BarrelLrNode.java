@@ -0,0 +1,27 @@
+class BarrelLrNode implements IntNode{
+    IntNode num;
+    
+    public BarrelLrNode(IntNode num){
+        this.num = num;
+        
+    }
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        if (this.num == null){
+            return robot.getClosestBarrelLR();
+        }
+        else{
+            return robot.getBarrelLR(num.evaluate(robot));
+        }
+    }
+    
+    public String toString(){
+        if (num != null){
+            return "barrelLR(" + num.toString() +")";
+        }
+        else{
+            return "barrelLR";
+        }
+    }
+}
@@ -0,0 +1,436 @@
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs one robot program in every match of a BatchWorld at once, the way a
+ * GPU runs one kernel over many threads: each node of the program is visited
+ * once for the whole batch, and works on arrays holding a value for every
+ * match. A mask says which matches are active at each point; an if or while
+ * narrows it for the matches whose condition holds, so matches whose play
+ * diverges simply sit out the parts of the program they are not in.
+ *
+ * An action steps only the active matches, so matches get ahead of one
+ * another, which does not matter as they are independent. The other robot
+ * is played by a BatchPolicy.
+ *
+ * A program that fails in a match (dividing by zero, or a negative barrel
+ * index) ends there as in a headless World, and a robot that loops for too
+ * long without acting forfeits, as it would in Match.
+ */
+public class BatchInterpreter {
+
+    private static final int SPIN_LIMIT = 1000000;  // loop iterations without an action before a robot forfeits
+
+    private final BatchWorld world;
+    private final int robot;
+    private final ProgramNode program;
+    private final BatchWorld.BatchPolicy opponent;
+    private final int size;
+    private final Map<String, int[]> variables = new HashMap<>();
+    private final boolean[] finished;   // the program has ended in this match
+    private final int[] spins;
+    private final int[] actions1, actions2;
+
+    public BatchInterpreter(BatchWorld world, int robot, ProgramNode program, BatchWorld.BatchPolicy opponent) {
+        this.world = world;
+        this.robot = robot;
+        this.program = program;
+        this.opponent = opponent;
+        size = world.size;
+        finished = new boolean[size];
+        spins = new int[size];
+        actions1 = new int[size];
+        actions2 = new int[size];
+    }
+
+    /**
+     * Play every match to the end. Once the program has ended in a match, the
+     * robot waits there until the match is over.
+     */
+    public void run() {
+        boolean[] all = new boolean[size];
+        Arrays.fill(all, true);
+        execute(program, all);
+        for (int i = 0; i < size; i++) {
+            finished[i] = true;
+        }
+        while (world.getLive() > 0) {
+            act(0, all, true);
+        }
+    }
+
+    /**
+     * The variables of one match, as a Robot would hold them: those the
+     * program has set or read so far.
+     */
+    Map<String, Integer> getVariables(int match) {
+        Map<String, Integer> values = new HashMap<>();
+        for (Map.Entry<String, int[]> variable : variables.entrySet())
+            values.put(variable.getKey(), variable.getValue()[match]);
+        return values;
+    }
+
+    // ---------------------------------------------------------------
+    // Statements
+
+    private void execute(ProgramNode node, boolean[] mask) {
+        if (!any(mask))
+            return;
+        if (node instanceof ProgNode prog) {
+            for (ProgramNode statement : prog.programList)
+                execute(statement, mask);
+        } else if (node instanceof BlockNode block) {
+            for (ProgramNode statement : block.statementList)
+                execute(statement, mask);
+        } else if (node instanceof StatementNode statement) {
+            execute(statement.statement, mask);
+        } else if (node instanceof ActionNode action) {
+            execute(action.action, mask);
+        } else if (node instanceof LoopNode loop) {
+            while (any(mask)) {
+                int[][] before = snapshot();
+                spin(mask);
+                execute(loop.block, mask);
+                stuck(mask, before);
+            }
+        } else if (node instanceof WhileNode loop) {
+            boolean[] running = mask.clone();
+            while (true) {
+                running = condition(loop.condition, running);
+                if (!any(running))
+                    break;
+                int[][] before = snapshot();
+                spin(running);
+                execute(loop.block, running);
+                stuck(running, before);
+            }
+        } else if (node instanceof IfNode ifNode) {
+            boolean[] yes = condition(ifNode.condition, mask);
+            execute(ifNode.block, yes);
+            if (ifNode.block2 != null)
+                execute(ifNode.block2, andNot(mask, yes));
+        } else if (node instanceof IfElseIfNode ifNode) {
+            executeIf(ifNode.cond, ifNode.blockT, ifNode.listOfMaps, null, mask);
+        } else if (node instanceof IfElseIfElseNode ifNode) {
+            executeIf(ifNode.cond, ifNode.blockT, ifNode.listOfMaps, ifNode.blockF, mask);
+        } else if (node instanceof AssgnNode assign) {
+            int[] value = expression(assign.num, mask);
+            int[] variable = variable(assign.variable);
+            for (int i = 0; i < size; i++) {
+                if (on(mask, i))
+                    variable[i] = value[i];
+            }
+        } else if (node instanceof MoveNode) {
+            act(Robot.ACTION_MOVE, mask, false);
+        } else if (node instanceof TurnLNode) {
+            act(Robot.ACTION_TURN_LEFT, mask, false);
+        } else if (node instanceof TurnRNode) {
+            act(Robot.ACTION_TURN_RIGHT, mask, false);
+        } else if (node instanceof TurnAroundNode) {
+            act(Robot.ACTION_TURN_AROUND, mask, false);
+        } else if (node instanceof TakeFuelNode) {
+            act(Robot.ACTION_TAKE_FUEL, mask, false);
+        } else if (node instanceof WaitNode) {
+            act(Robot.ACTION_WAIT, mask, false);
+        } else if (node instanceof MoveVarNode move) {
+            repeat(Robot.ACTION_MOVE, expression(move.expr, mask), mask);
+        } else if (node instanceof WaitVarNode wait) {
+            repeat(Robot.ACTION_WAIT, expression(wait.expr, mask), mask);
+        } else if (node instanceof ShieldOnNode || node instanceof ShieldOffNode) {
+            boolean on = node instanceof ShieldOnNode;
+            for (int i = 0; i < size; i++) {
+                if (on(mask, i))
+                    world.setShield(robot, i, on);
+            }
+        } else {
+            throw new IllegalArgumentException("Can not run " + node.getClass().getName() + " in a batch");
+        }
+    }
+
+    private void executeIf(BooleanNode cond, ProgramNode blockT, List<Map<BooleanNode, ProgramNode>> elifs,
+                           ProgramNode blockF, boolean[] mask) {
+        boolean[] yes = condition(cond, mask);
+        execute(blockT, yes);
+        boolean[] rest = andNot(mask, yes);
+        for (Map<BooleanNode, ProgramNode> elif : elifs) {
+            for (Map.Entry<BooleanNode, ProgramNode> entry : elif.entrySet()) {
+                yes = condition(entry.getKey(), rest);
+                execute(entry.getValue(), yes);
+                rest = andNot(rest, yes);
+            }
+        }
+        if (blockF != null)
+            execute(blockF, rest);
+    }
+
+    /** move(n) and wait(n): step each match as many times as its n says */
+    private void repeat(int action, int[] times, boolean[] mask) {
+        boolean[] going = mask.clone();
+        for (int k = 0; ; k++) {
+            for (int i = 0; i < size; i++) {
+                going[i] = going[i] && times[i] > k;
+            }
+            if (!any(going))
+                return;
+            act(action, going, false);
+        }
+    }
+
+    /** Play one turn in the active matches, the other robot choosing with its policy */
+    private void act(int action, boolean[] mask, boolean idle) {
+        int[] mine = (robot == 1) ? actions1 : actions2;
+        int[] theirs = (robot == 1) ? actions2 : actions1;
+        boolean[] step = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if ((idle || on(mask, i)) && !world.isOver(i)) {
+                step[i] = true;
+                mine[i] = action;
+                theirs[i] = opponent.act(world, 3 - robot, i);
+                spins[i] = 0;
+            }
+        }
+        world.step(actions1, actions2, step);
+    }
+
+    /** Count a loop iteration, and forfeit matches where the robot has looped too long without acting */
+    private void spin(boolean[] mask) {
+        for (int i = 0; i < size; i++) {
+            if (on(mask, i) && ++spins[i] > SPIN_LIMIT) {
+                world.forfeit(robot, i);
+                finished[i] = true;
+            }
+        }
+    }
+
+    /** The variables and shields at the start of a loop iteration */
+    private int[][] snapshot() {
+        int[][] state = new int[variables.size() + 1][];
+        int k = 0;
+        for (int[] variable : variables.values())
+            state[k++] = variable.clone();
+        state[k] = new int[size];
+        for (int i = 0; i < size; i++) {
+            state[k][i] = world.isShieldOn(robot, i) ? 1 : 0;
+        }
+        return state;
+    }
+
+    /**
+     * A match that went round a loop without acting, and came back with the
+     * same variables and shield, will go round it for ever; it forfeits now
+     * rather than after SPIN_LIMIT iterations, which all the other matches
+     * would have to sit through.
+     */
+    private void stuck(boolean[] mask, int[][] before) {
+        if (before.length != variables.size() + 1)
+            return;     // a variable was set for the first time
+        int[][] after = snapshot();
+        for (int i = 0; i < size; i++) {
+            if (!on(mask, i) || spins[i] == 0)
+                continue;
+            boolean same = true;
+            for (int k = 0; k < after.length && same; k++) {
+                same = before[k][i] == after[k][i];
+            }
+            if (same) {
+                world.forfeit(robot, i);
+                finished[i] = true;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Conditions, giving the matches where they hold
+
+    private boolean[] condition(BooleanNode node, boolean[] mask) {
+        boolean[] result = new boolean[size];
+        if (node instanceof AndNode and) {
+            boolean[] first = condition(and.cond1, mask);
+            return condition(and.cond2, first);  // only where the first holds, as && does
+        } else if (node instanceof OrNode or) {
+            boolean[] first = condition(or.cond1, mask);
+            boolean[] second = condition(or.cond2, andNot(mask, first));
+            for (int i = 0; i < size; i++) {
+                result[i] = first[i] || second[i];
+            }
+        } else if (node instanceof NotNode not) {
+            boolean[] inner = condition(not.cond1, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = on(mask, i) && !inner[i];
+            }
+        } else if (node instanceof GreaterNode gt) {
+            int[] a = expression(gt.compare, mask), b = expression(gt.value, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = on(mask, i) && a[i] > b[i];
+            }
+        } else if (node instanceof LessNode lt) {
+            int[] a = expression(lt.compare, mask), b = expression(lt.value, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = on(mask, i) && a[i] < b[i];
+            }
+        } else if (node instanceof EqualNode eq) {
+            int[] a = expression(eq.compare, mask), b = expression(eq.value, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = on(mask, i) && a[i] == b[i];
+            }
+        } else {
+            throw new IllegalArgumentException("Can not evaluate " + node.getClass().getName() + " in a batch");
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------
+    // Expressions, giving a value for each active match
+
+    private int[] expression(IntNode node, boolean[] mask) {
+        int[] result = new int[size];
+        if (node instanceof NumNode || node instanceof ExprNode) {
+            Arrays.fill(result, node.evaluate(null));
+        } else if (node instanceof VarNode var) {
+            int[] variable = variable(var.name);
+            System.arraycopy(variable, 0, result, 0, size);
+        } else if (node instanceof AddNode add) {
+            int[] a = expression(add.expr1, mask), b = expression(add.expr2, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = a[i] + b[i];
+            }
+        } else if (node instanceof SubNode sub) {
+            int[] a = expression(sub.expr1, mask), b = expression(sub.expr2, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = a[i] - b[i];
+            }
+        } else if (node instanceof MulNode mul) {
+            int[] a = expression(mul.expr1, mask), b = expression(mul.expr2, mask);
+            for (int i = 0; i < size; i++) {
+                result[i] = a[i] * b[i];
+            }
+        } else if (node instanceof DivNode div) {
+            int[] a = expression(div.expr1, mask), b = expression(div.expr2, mask);
+            for (int i = 0; i < size; i++) {
+                if (!on(mask, i))
+                    continue;
+                if (b[i] == 0)
+                    finished[i] = true;     // ArithmeticException ends the program
+                else
+                    result[i] = a[i] / b[i];
+            }
+        } else if (node instanceof BarrelLrNode || node instanceof BarrelFbNode) {
+            boolean lr = node instanceof BarrelLrNode;
+            IntNode num = lr ? ((BarrelLrNode) node).num : ((BarrelFbNode) node).num;
+            int[] n = (num == null) ? new int[size] : expression(num, mask);
+            for (int i = 0; i < size; i++) {
+                if (!on(mask, i))
+                    continue;
+                try {
+                    result[i] = lr ? world.getBarrelLR(robot, i, n[i]) : world.getBarrelFB(robot, i, n[i]);
+                } catch (IndexOutOfBoundsException e) {
+                    finished[i] = true;
+                }
+            }
+        } else if (node instanceof BarrelDistNode || node instanceof BarrelActNode) {
+            boolean distance = node instanceof BarrelDistNode;
+            IntNode num = distance ? ((BarrelDistNode) node).num : ((BarrelActNode) node).num;
+            int[] n = (num == null) ? new int[size] : expression(num, mask);
+            for (int i = 0; i < size; i++) {
+                if (!on(mask, i))
+                    continue;
+                try {
+                    result[i] = distance ? world.getBarrelDistance(robot, i, n[i]) : world.getBarrelAction(robot, i, n[i]);
+                } catch (IndexOutOfBoundsException e) {
+                    finished[i] = true;
+                }
+            }
+        } else if (node instanceof FuelLeftNode) {
+            for (int i = 0; i < size; i++) {
+                result[i] = world.getFuel(robot, i);
+            }
+        } else if (node instanceof OppLrNode) {
+            for (int i = 0; i < size; i++) {
+                result[i] = world.getOpponentLR(robot, i);
+            }
+        } else if (node instanceof OppFbNode) {
+            for (int i = 0; i < size; i++) {
+                result[i] = world.getOpponentFB(robot, i);
+            }
+        } else if (node instanceof NumBarrelsNode) {
+            for (int i = 0; i < size; i++) {
+                result[i] = on(mask, i) ? world.numBarrels(robot, i) : 0;
+            }
+        } else if (node instanceof WallDistNode) {
+            for (int i = 0; i < size; i++) {
+                result[i] = world.getDistanceToWall(robot, i);
+            }
+        } else {
+            throw new IllegalArgumentException("Can not evaluate " + node.getClass().getName() + " in a batch");
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------
+    // Masks
+
+    /** Whether match i is active: in the mask, and still being played by the program */
+    private boolean on(boolean[] mask, int i) {
+        return mask[i] && !finished[i] && !world.isOver(i);
+    }
+
+    /** Drops the matches that have stopped from the mask, and says whether any are left */
+    private boolean any(boolean[] mask) {
+        boolean any = false;
+        for (int i = 0; i < size; i++) {
+            mask[i] = on(mask, i);
+            any |= mask[i];
+        }
+        return any;
+    }
+
+    private boolean[] andNot(boolean[] mask, boolean[] taken) {
+        boolean[] result = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = on(mask, i) && !taken[i];
+        }
+        return result;
+    }
+
+    private int[] variable(String name) {
+        return variables.computeIfAbsent(name, k -> new int[size]);
+    }
+
+    /**
+     * Checks a BatchInterpreter against Match: plays the program against the
+     * default program on the same seeds, on both sides, and reports any
+     * difference. Usage: BatchInterpreter program [matches]
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        ProgramNode program = Match.loadProgram(args[0]);
+        int n = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+        long[] seeds = new long[n];
+        for (int i = 0; i < n; i++)
+            seeds[i] = i + 1;
+
+        for (int robot = 1; robot <= 2; robot++) {
+            long start = System.nanoTime();
+            BatchWorld batch = new BatchWorld(seeds);
+            new BatchInterpreter(batch, robot, program, BatchWorld.DEFAULT_PROGRAM).run();
+            long batchTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int differences = 0;
+            for (int i = 0; i < n; i++) {
+                Match match = (robot == 1) ? new Match(program, null, seeds[i]) : new Match(null, program, seeds[i]);
+                Match.Result result = match.play();
+                if (result.winner != batch.getWinner(i) || result.turns != batch.getTurns(i)) {
+                    differences++;
+                    System.out.println("robot " + robot + ", seed " + seeds[i] + ": match " + result + ", batch "
+                                       + batch.getWinner(i) + " after " + batch.getTurns(i) + " turns");
+                }
+            }
+            long matchTime = System.nanoTime() - start;
+            System.out.printf("as robot %d: %d matches, %d differences; batch %.1f ms, one by one %.1f ms%n",
+                              robot, n, differences, batchTime / 1e6, matchTime / 1e6);
+        }
+    }
+}
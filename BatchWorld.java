@@ -0,0 +1,508 @@
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+
+/**
+ * Many headless matches stepped together, for parameter sweeps. Rather than a
+ * World with two Robots per match, each property of every match is held in
+ * one primitive array (x, y, direction, fuel, shield, and a bitboard of the
+ * barrels), and a turn is a handful of passes over those arrays.
+ *
+ * The passes are plain counted loops over int arrays without calls, which
+ * C2 turns into SIMD code: the fuel costs, the movement and wall clamping and
+ * the commit. Only the rare cases (taking fuel, the fuel drops) are handled
+ * match by match.
+ *
+ * A turn is resolved exactly as a headless World resolves it, neither robot
+ * first, and the sensors give what a Robot would see, so a BatchWorld gives the
+ * same results as Match on the same seeds.
+ *
+ * Robots are numbered 1 and 2 as in World, and the robots' actions are the
+ * Robot.ACTION_ codes, with 0 meaning the robot's program has finished.
+ */
+public class BatchWorld {
+
+    private static final int SIZE = World.SIZE;
+    private static final int WORDS = 3;     // longs in a barrel bitboard
+    private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL, MASK = (1L << 48) - 1;
+
+    public final int size;
+    private final int[][] x, y, dir, fuel, shield;
+    private final int[][] targetX, targetY, targetDir, targetFuel;
+    private final int[][] seenX, seenY;     // where each robot last saw the other one, -1 before the first turn
+    private final long[] barrels;           // WORDS per match
+    private final long[] rand;
+    private final int[] turn, winner;
+    private final boolean[] over;
+    private final boolean[] active;         // the matches being stepped this turn
+    private final boolean[][] siphoning;    // took fuel this turn where there was no barrel
+    private int live;
+
+    // each robot's barrels, sorted as Robot sorts them, rebuilt when first sensed in a turn
+    private final int[][] sorted, sortedCount, sortedTurn;
+
+    /** One match for each seed */
+    public BatchWorld(long[] seeds) {
+        size = seeds.length;
+        x = new int[2][size];
+        y = new int[2][size];
+        dir = new int[2][size];
+        fuel = new int[2][size];
+        shield = new int[2][size];
+        targetX = new int[2][size];
+        targetY = new int[2][size];
+        targetDir = new int[2][size];
+        targetFuel = new int[2][size];
+        siphoning = new boolean[2][size];
+        seenX = new int[2][size];
+        seenY = new int[2][size];
+        sorted = new int[2][size * SIZE * SIZE];
+        sortedCount = new int[2][size];
+        sortedTurn = new int[2][size];
+        barrels = new long[size * WORDS];
+        rand = new long[size];
+        turn = new int[size];
+        winner = new int[size];
+        over = new boolean[size];
+        active = new boolean[size];
+        live = size;
+        for (int i = 0; i < size; i++) {
+            x[1][i] = SIZE - 1;
+            y[1][i] = SIZE - 1;
+            dir[0][i] = 2;  // south
+            dir[1][i] = 0;  // north
+            fuel[0][i] = fuel[1][i] = 100;
+            seenX[0][i] = seenX[1][i] = -1;
+            sortedTurn[0][i] = sortedTurn[1][i] = -1;
+            rand[i] = (seeds[i] ^ MULTIPLIER) & MASK;
+            // the initial fuel, as World.start adds it
+            dropFuel(i, true);
+            dropFuel(i, true);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Stepping
+
+    /**
+     * Play one turn in every match that is not over, given each robot's
+     * action. Shields are set beforehand with setShield.
+     */
+    public void step(int[] actions1, int[] actions2) {
+        step(actions1, actions2, null);
+    }
+
+    /**
+     * Play one turn in the given matches only (all of them if null); the
+     * others stay as they are, so matches can get ahead of each other.
+     */
+    public void step(int[] actions1, int[] actions2, boolean[] matches) {
+        for (int i = 0; i < size; i++) {
+            active[i] = !over[i] && (matches == null || matches[i]);
+        }
+        // both robots' moves are proposed, then those that meet are undone, as in Robot.resolveMoves
+        proposeMoves(0, actions1);
+        proposeMoves(1, actions2);
+        resolveMoves();
+        resolveTurns(0, actions1);
+        resolveTurns(1, actions2);
+        // fuel: both robots' costs and barrels first, then the siphons, as in World.updateWorld
+        useFuel(0, actions1);
+        useFuel(1, actions2);
+        takeFuel(0, actions1);
+        takeFuel(1, actions2);
+        siphon();
+        for (int i = 0; i < size; i++) {
+            if (active[i])
+                dropFuel(i, false);
+        }
+        // both robots move before either looks around, as in World.updateWorld
+        commit(0);
+        commit(1);
+        int[] x0 = x[0], y0 = y[0], x1 = x[1], y1 = y[1];
+        int[] sx0 = seenX[0], sy0 = seenY[0], sx1 = seenX[1], sy1 = seenY[1];
+        for (int i = 0; i < size; i++) {
+            sx0[i] = active[i] ? x1[i] : sx0[i];
+            sy0[i] = active[i] ? y1[i] : sy0[i];
+            sx1[i] = active[i] ? x0[i] : sx1[i];
+            sy1[i] = active[i] ? y0[i] : sy1[i];
+        }
+        int[] f0 = fuel[0], f1 = fuel[1];
+        for (int i = 0; i < size; i++) {
+            if (!active[i])
+                continue;
+            turn[i]++;
+            if (f0[i] <= 0 || f1[i] <= 0) {
+                winner[i] = (f0[i] <= 0 && f1[i] <= 0) ? 0 : (f0[i] <= 0) ? 2 : 1;
+                end(i);
+            } else if (turn[i] >= Match.MAX_TURNS) {
+                end(i);
+            }
+        }
+    }
+
+    private void proposeMoves(int r, int[] actions) {
+        int[] px = x[r], py = y[r], pd = dir[r], tx = targetX[r], ty = targetY[r];
+        for (int i = 0; i < size; i++) {
+            int d = pd[i];
+            int moving = (actions[i] == Robot.ACTION_MOVE) ? 1 : 0;
+            int dx = ((d == 3) ? 1 : 0) - ((d == 1) ? 1 : 0);
+            int dy = ((d == 2) ? 1 : 0) - ((d == 0) ? 1 : 0);
+            tx[i] = Math.min(SIZE - 1, Math.max(0, px[i] + moving * dx));
+            ty[i] = Math.min(SIZE - 1, Math.max(0, py[i] + moving * dy));
+        }
+    }
+
+    /** Robots heading for the same cell, or swapping cells, both stay put */
+    private void resolveMoves() {
+        int[] x0 = x[0], y0 = y[0], x1 = x[1], y1 = y[1];
+        int[] tx0 = targetX[0], ty0 = targetY[0], tx1 = targetX[1], ty1 = targetY[1];
+        for (int i = 0; i < size; i++) {
+            boolean sameCell = tx0[i] == tx1[i] && ty0[i] == ty1[i];
+            boolean swap = tx0[i] == x1[i] && ty0[i] == y1[i] && tx1[i] == x0[i] && ty1[i] == y0[i];
+            boolean blocked = sameCell || swap;
+            tx0[i] = blocked ? x0[i] : tx0[i];
+            ty0[i] = blocked ? y0[i] : ty0[i];
+            tx1[i] = blocked ? x1[i] : tx1[i];
+            ty1[i] = blocked ? y1[i] : ty1[i];
+        }
+    }
+
+    private void resolveTurns(int r, int[] actions) {
+        int[] pd = dir[r], td = targetDir[r];
+        for (int i = 0; i < size; i++) {
+            int a = actions[i];
+            int by = (a == Robot.ACTION_TURN_LEFT) ? 1 : (a == Robot.ACTION_TURN_RIGHT) ? 3 : (a == Robot.ACTION_TURN_AROUND) ? 2 : 0;
+            td[i] = (pd[i] + by) & 3;
+        }
+    }
+
+    /** The fuel used by every action, taking fuel being handled afterwards */
+    private void useFuel(int r, int[] actions) {
+        int[] f = fuel[r], tf = targetFuel[r], sh = shield[r];
+        for (int i = 0; i < size; i++) {
+            int a = actions[i];
+            int cost = (a == Robot.ACTION_MOVE) ? Robot.FUEL_MOVE
+                : (a >= Robot.ACTION_TURN_LEFT && a <= Robot.ACTION_TURN_AROUND) ? Robot.FUEL_TURN
+                : Robot.FUEL_IDLE;
+            tf[i] = active[i] ? f[i] - cost - sh[i] * Robot.FUEL_SHIELD : tf[i];
+        }
+    }
+
+    /** Barrels taken; a robot that takes fuel where there is none siphons instead */
+    private void takeFuel(int r, int[] actions) {
+        for (int i = 0; i < size; i++) {
+            siphoning[r][i] = false;
+            if (actions[i] != Robot.ACTION_TAKE_FUEL || !active[i])
+                continue;
+            int cell = y[r][i] * SIZE + x[r][i];
+            if (hasBarrel(i, cell)) {
+                barrels[i * WORDS + cell / 64] &= ~(1L << (cell % 64));
+                targetFuel[r][i] = 100;
+            } else {
+                siphoning[r][i] = true;
+            }
+        }
+    }
+
+    /** Both robots' siphons, worked out from what each has left after its own action */
+    private void siphon() {
+        for (int i = 0; i < size; i++) {
+            if (!siphoning[0][i] && !siphoning[1][i])
+                continue;
+            int take1 = siphonAmount(0, i), take2 = siphonAmount(1, i);
+            if (take1 > 0)
+                targetFuel[0][i] = Math.min(100, fuel[0][i] + take1);
+            if (take2 > 0)
+                targetFuel[1][i] = Math.min(100, fuel[1][i] + take2);
+            targetFuel[0][i] -= take2;
+            targetFuel[1][i] -= take1;
+        }
+    }
+
+    /** What robot r siphons from the robot in front of it, as Robot.siphonAmount */
+    private int siphonAmount(int r, int i) {
+        int o = 1 - r;
+        if (!siphoning[r][i] || shield[o][i] != 0
+            || relativeLR(r, i, x[o][i], y[o][i]) != 0 || relativeFB(r, i, x[o][i], y[o][i]) != 1)
+            return 0;
+        return Math.max(0, Math.min(targetFuel[o][i], Math.min(25, targetFuel[o][i] / 2)));
+    }
+
+    private void commit(int r) {
+        int[] px = x[r], py = y[r], pd = dir[r], f = fuel[r];
+        int[] tx = targetX[r], ty = targetY[r], td = targetDir[r], tf = targetFuel[r];
+        for (int i = 0; i < size; i++) {
+            boolean done = !active[i];
+            px[i] = done ? px[i] : tx[i];
+            py[i] = done ? py[i] : ty[i];
+            pd[i] = done ? pd[i] : td[i];
+            f[i] = done ? f[i] : tf[i];
+        }
+    }
+
+    private void end(int i) {
+        over[i] = true;
+        live--;
+    }
+
+    /** End a match whose robot has stopped acting, as Match does */
+    public void forfeit(int robot, int match) {
+        if (!over[match]) {
+            winner[match] = 3 - robot;
+            end(match);
+        }
+    }
+
+    /** World.addFuel for one match, with the random numbers of its WorldRandom */
+    private void dropFuel(int i, boolean definitely) {
+        if (definitely || nextDouble(i) < 0.2) {
+            int fx = nextInt(i, 12);
+            int fy = nextInt(i, 12);
+            int cell = fy * SIZE + fx;
+            barrels[i * WORDS + cell / 64] |= 1L << (cell % 64);
+        }
+    }
+
+    private int next(int i, int bits) {
+        rand[i] = (rand[i] * MULTIPLIER + ADDEND) & MASK;
+        return (int) (rand[i] >>> (48 - bits));
+    }
+
+    private double nextDouble(int i) {
+        return (((long) next(i, 26) << 27) + next(i, 27)) * 0x1.0p-53;
+    }
+
+    private int nextInt(int i, int bound) {
+        int r = next(i, 31);
+        int m = bound - 1;
+        for (int u = r; u - (r = u % bound) + m < 0; u = next(i, 31))
+            ;
+        return r;
+    }
+
+    // ---------------------------------------------------------------
+    // Playing whole matches
+
+    /**
+     * Play every match to the end, each robot choosing its actions with the
+     * given policy.
+     */
+    public void play(BatchPolicy policy1, BatchPolicy policy2) {
+        int[] actions1 = new int[size], actions2 = new int[size];
+        while (live > 0) {
+            for (int i = 0; i < size; i++) {
+                if (!over[i]) {
+                    actions1[i] = policy1.act(this, 1, i);
+                    actions2[i] = policy2.act(this, 2, i);
+                }
+            }
+            step(actions1, actions2);
+        }
+    }
+
+    public boolean isOver(int match) {
+        return over[match];
+    }
+
+    /** 1 or 2, or 0 for a draw */
+    public int getWinner(int match) {
+        return winner[match];
+    }
+
+    public int getTurns(int match) {
+        return turn[match];
+    }
+
+    public int getLive() {
+        return live;
+    }
+
+    // ---------------------------------------------------------------
+    // Robot sensors and the shield, for robot 1 or 2 in a match
+
+    public void setShield(int robot, int match, boolean on) {
+        shield[robot - 1][match] = on ? 1 : 0;
+    }
+
+    public boolean isShieldOn(int robot, int match) {
+        return shield[robot - 1][match] != 0;
+    }
+
+    public int getFuel(int robot, int match) {
+        return fuel[robot - 1][match];
+    }
+
+    public int getDistanceToWall(int robot, int match) {
+        int r = robot - 1;
+        switch (dir[r][match]) {
+        case 0 -> { return y[r][match]; }
+        case 1 -> { return x[r][match]; }
+        case 2 -> { return SIZE - 1 - y[r][match]; }
+        default -> { return SIZE - 1 - x[r][match]; }
+        }
+    }
+
+    public int getOpponentLR(int robot, int match) {
+        int r = robot - 1;
+        return (seenX[r][match] < 0) ? Robot.INFINITY : relativeLR(r, match, seenX[r][match], seenY[r][match]);
+    }
+
+    public int getOpponentFB(int robot, int match) {
+        int r = robot - 1;
+        return (seenX[r][match] < 0) ? Robot.INFINITY : relativeFB(r, match, seenX[r][match], seenY[r][match]);
+    }
+
+    public int numBarrels(int robot, int match) {
+        return sortBarrels(robot - 1, match);
+    }
+
+    /**
+     * As Robot.getBarrelLR: INFINITY past the last barrel, and an
+     * IndexOutOfBoundsException for a negative n.
+     */
+    public int getBarrelLR(int robot, int match, int n) {
+        int r = robot - 1;
+        int count = sortBarrels(r, match);
+        if (n >= count)
+            return Robot.INFINITY;
+        int cell = sorted[r][match * SIZE * SIZE + checkIndex(n)] & 0xFF;
+        return relativeLR(r, match, cell % SIZE, cell / SIZE);
+    }
+
+    public int getBarrelFB(int robot, int match, int n) {
+        int r = robot - 1;
+        int count = sortBarrels(r, match);
+        if (n >= count)
+            return Robot.INFINITY;
+        int cell = sorted[r][match * SIZE * SIZE + checkIndex(n)] & 0xFF;
+        return relativeFB(r, match, cell % SIZE, cell / SIZE);
+    }
+
+    /** As Robot.getBarrelDistance, going around where the other robot was seen */
+    public int getBarrelDistance(int robot, int match, int n) {
+        return path(robot - 1, match, n, false);
+    }
+
+    /** As Robot.getBarrelAction */
+    public int getBarrelAction(int robot, int match, int n) {
+        return path(robot - 1, match, n, true);
+    }
+
+    private int path(int r, int match, int n, boolean action) {
+        int count = sortBarrels(r, match);
+        if (n >= count)
+            return Robot.INFINITY;
+        int cell = sorted[r][match * SIZE * SIZE + checkIndex(n)] & 0xFF;
+        int px = x[r][match], py = y[r][match], pd = dir[r][match];
+        return action ? PathTable.firstAction(px, py, pd, cell % SIZE, cell / SIZE, seenX[r][match], seenY[r][match])
+                      : PathTable.distance(px, py, pd, cell % SIZE, cell / SIZE, seenX[r][match], seenY[r][match]);
+    }
+
+    private static int checkIndex(int n) {
+        if (n < 0)
+            throw new IndexOutOfBoundsException("Index " + n + " out of bounds");
+        return n;
+    }
+
+    private int relativeLR(int r, int i, int px, int py) {
+        switch (dir[r][i]) {
+        case 0 -> { return px - x[r][i]; }
+        case 1 -> { return y[r][i] - py; }
+        case 2 -> { return x[r][i] - px; }
+        default -> { return py - y[r][i]; }
+        }
+    }
+
+    private int relativeFB(int r, int i, int px, int py) {
+        switch (dir[r][i]) {
+        case 0 -> { return y[r][i] - py; }
+        case 1 -> { return x[r][i] - px; }
+        case 2 -> { return py - y[r][i]; }
+        default -> { return px - x[r][i]; }
+        }
+    }
+
+    private boolean hasBarrel(int i, int cell) {
+        return (barrels[i * WORDS + cell / 64] & (1L << (cell % 64))) != 0;
+    }
+
+    /**
+     * Sort the barrels the way Robot.updatePending does: by distance, then
+     * front-back, then left-right. A robot sees no barrels before the first
+     * turn. Returns the number of barrels.
+     */
+    private int sortBarrels(int r, int i) {
+        if (seenX[r][i] < 0)
+            return 0;
+        if (sortedTurn[r][i] == turn[i])
+            return sortedCount[r][i];
+        int[] keys = sorted[r];
+        int base = i * SIZE * SIZE;
+        int count = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long bits = barrels[i * WORDS + w];
+            while (bits != 0) {
+                int cell = w * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int lr = relativeLR(r, i, cell % SIZE, cell / SIZE);
+                int fb = relativeFB(r, i, cell % SIZE, cell / SIZE);
+                int distance = Math.abs(lr) + Math.abs(fb);
+                // sort key above, cell number in the low byte
+                keys[base + count++] = (distance << 20) | ((fb + 32) << 14) | ((lr + 32) << 8) | cell;
+            }
+        }
+        Arrays.sort(keys, base, base + count);
+        sortedCount[r][i] = count;
+        sortedTurn[r][i] = turn[i];
+        return count;
+    }
+
+    /** Chooses a robot's action for a turn of one match in a BatchWorld */
+    public interface BatchPolicy {
+        int act(BatchWorld world, int robot, int match);
+    }
+
+    /** The robots' default program (Robot.defaultProgram) */
+    public static final BatchPolicy DEFAULT_PROGRAM = (world, robot, match) -> {
+        if (world.numBarrels(robot, match) == 0)
+            return Robot.ACTION_WAIT;
+        int lr = world.getBarrelLR(robot, match, 0);
+        int fb = world.getBarrelFB(robot, match, 0);
+        if (lr == 0 && fb == 0)
+            return Robot.ACTION_TAKE_FUEL;
+        if (fb == 0)
+            return (lr < 0) ? Robot.ACTION_TURN_LEFT : Robot.ACTION_TURN_RIGHT;
+        return (fb > 0) ? Robot.ACTION_MOVE : Robot.ACTION_TURN_AROUND;
+    };
+
+    /**
+     * Checks a BatchWorld against Match: plays the default program against
+     * itself on the same seeds both ways and reports any difference.
+     * Usage: BatchWorld [matches]
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        long[] seeds = new long[n];
+        for (int i = 0; i < n; i++)
+            seeds[i] = i + 1;
+
+        long start = System.nanoTime();
+        BatchWorld batch = new BatchWorld(seeds);
+        batch.play(DEFAULT_PROGRAM, DEFAULT_PROGRAM);
+        long batchTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int differences = 0;
+        for (int i = 0; i < n; i++) {
+            Match.Result result = new Match(null, null, seeds[i]).play();
+            if (result.winner != batch.getWinner(i) || result.turns != batch.getTurns(i)) {
+                differences++;
+                System.out.println("seed " + seeds[i] + ": match " + result + ", batch "
+                                   + batch.getWinner(i) + " after " + batch.getTurns(i) + " turns");
+            }
+        }
+        long matchTime = System.nanoTime() - start;
+        System.out.printf("%d matches, %d differences; batch %.1f ms, one by one %.1f ms%n",
+                          n, differences, batchTime / 1e6, matchTime / 1e6);
+    }
+}
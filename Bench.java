@@ -0,0 +1,247 @@
+import java.awt.Point;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Micro benchmarks for the parser, the interpreter and the world, run with
+ * nothing but the JDK:
+ *
+ *   parse      parsing fullprogram.prog, and programs of 10 to 1000
+ *              statements from ProgramGenerator
+ *   expr       evaluating expression trees of depth 2 to 8 against a robot
+ *   cond       evaluating condition trees of depth 2 to 8 against a robot
+ *   pending    one Robot.updatePending with 0, 10 and 100 barrels
+ *   match      whole headless matches, looped programs of 10 to 1000
+ *              statements from ProgramGenerator against fullprogram.prog
+ *
+ * Each benchmark is warmed up, then timed over several iterations; the score
+ * is the mean time per operation, with a 99.9% interval over the iterations.
+ * Results are fed to a sink so the JIT can not drop the work. Run each
+ * benchmark in a fresh JVM (with a filter) to keep the profile of one from
+ * shaping the code of the next.
+ */
+public class Bench {
+
+    private static final double Z = 3.29;   // 99.9% intervals
+    private static final long BATCH_NANOS = 1000000;   // time between clock reads while measuring
+    private static final long PROGRAM_SEED = 1;         // of the generated programs, so every run has the same ones
+
+    private int warmups = 5;
+    private int iterations = 10;
+    private long iterationNanos = 500000000;
+    private final List<Benchmark> benchmarks = new ArrayList<>();
+    private static volatile int sink;
+
+    /** One operation to time; what it returns goes to the sink */
+    public interface Operation {
+        int run() throws Exception;
+    }
+
+    private static class Benchmark {
+        final String name, param;
+        final Operation operation;
+
+        Benchmark(String name, String param, Operation operation) {
+            this.name = name;
+            this.param = param;
+            this.operation = operation;
+        }
+    }
+
+    public Bench setWarmups(int warmups) {
+        this.warmups = warmups;
+        return this;
+    }
+
+    public Bench setIterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    public Bench setIterationMillis(long millis) {
+        this.iterationNanos = millis * 1000000;
+        return this;
+    }
+
+    public Bench add(String name, String param, Operation operation) {
+        benchmarks.add(new Benchmark(name, param, operation));
+        return this;
+    }
+
+    /**
+     * Run every benchmark whose name contains the filter (or all, if it is
+     * null), printing a line for each.
+     */
+    public void run(String filter, PrintStream out) throws Exception {
+        out.printf("%-16s %8s %14s %12s  %s%n", "Benchmark", "Param", "Score", "Error", "Units");
+        for (Benchmark benchmark : benchmarks) {
+            if (filter != null && !benchmark.name.contains(filter))
+                continue;
+            double[] scores = measure(benchmark.operation);
+            double mean = 0;
+            for (double score : scores)
+                mean += score;
+            mean /= scores.length;
+            double variance = 0;
+            for (double score : scores)
+                variance += (score - mean) * (score - mean);
+            double error = (scores.length < 2) ? 0 : Z * Math.sqrt(variance / (scores.length - 1) / scores.length);
+            out.printf("%-16s %8s %14.1f +- %10.1f  ns/op%n", benchmark.name, benchmark.param, mean, error);
+        }
+    }
+
+    /** Nanoseconds per operation, for each measured iteration */
+    private double[] measure(Operation operation) throws Exception {
+        // find how many operations take about BATCH_NANOS, so the clock is read rarely
+        int batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            runBatch(operation, batch);
+            if (System.nanoTime() - start >= BATCH_NANOS || batch >= (1 << 30))
+                break;
+            batch *= 2;
+        }
+        for (int i = 0; i < warmups; i++)
+            iteration(operation, batch);
+        double[] scores = new double[iterations];
+        for (int i = 0; i < iterations; i++)
+            scores[i] = iteration(operation, batch);
+        return scores;
+    }
+
+    private double iteration(Operation operation, int batch) throws Exception {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            runBatch(operation, batch);
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return (double) elapsed / operations;
+    }
+
+    private static void runBatch(Operation operation, int batch) throws Exception {
+        int result = 0;
+        for (int i = 0; i < batch; i++)
+            result += operation.run();
+        sink += result;
+    }
+
+    // ---------------------------------------------------------------
+    // The benchmarks of this game
+
+    /**
+     * A ProgramGenerator program of the given number of statements, in a loop
+     * that waits at the end of each pass. With no whiles or nested loops it
+     * acts on every pass and can not forfeit, though a division by zero can
+     * still end it. The same size always gives the same program.
+     */
+    public static String matchProgram(int statements) {
+        String body = new ProgramGenerator(PROGRAM_SEED).setStatements(statements).setMix(8, 3, 0, 0, 2).generate();
+        return "loop {\n" + body + "wait;\n}\n";
+    }
+
+    /** A balanced expression of the given depth over sensors, variables and numbers */
+    public static String expression(int depth) {
+        return expression(depth, 1);
+    }
+
+    private static String expression(int depth, int at) {
+        if (depth <= 1) {
+            String[] leaves = { "fuelLeft", "barrelLR", "$a", "7", "oppFB", "numBarrels", "wallDist", "-3" };
+            return leaves[at % leaves.length];
+        }
+        String[] ops = { "add", "sub", "mul" };
+        String op = ops[depth % ops.length];
+        return op + "(" + expression(depth - 1, 2 * at) + ", " + expression(depth - 1, 2 * at + 1) + ")";
+    }
+
+    /** A balanced condition of the given depth over comparisons of expressions */
+    public static String condition(int depth) {
+        if (depth <= 1)
+            return "gt(" + expression(2, depth) + ", " + expression(1, depth + 3) + ")";
+        return switch (depth % 3) {
+        case 0 -> "and(" + condition(depth - 1) + ", " + condition(depth - 1) + ")";
+        case 1 -> "or(" + condition(depth - 1) + ", " + condition(depth - 1) + ")";
+        default -> "not(" + condition(depth - 1) + ")";
+        };
+    }
+
+    private static ProgramNode parse(String text) {
+        return new Parser().parse(new Scanner(text));
+    }
+
+    private static IntNode parseExpression(String text) {
+        ProgNode program = (ProgNode) parse("$x = " + text + ";");
+        return ((AssgnNode) program.programList.get(0)).num;
+    }
+
+    private static BooleanNode parseCondition(String text) {
+        ProgNode program = (ProgNode) parse("if (" + text + ") { wait; }");
+        return ((IfNode) program.programList.get(0)).condition;
+    }
+
+    /** A robot in a world that is never started, with its sensors up to date */
+    private static Robot standIn(int barrels) {
+        World world = new World(1, true);
+        world.getAvailableFuel().clear();
+        for (int i = 0; i < barrels; i++)
+            world.getAvailableFuel().add(new Point(i % World.SIZE, (i / World.SIZE * 5) % World.SIZE));
+        Robot robot = world.getRobot(1);
+        robot.updatePending();
+        return robot;
+    }
+
+    /**
+     * Usage: Bench [filter [iterations]]
+     * Run from the directory holding fullprogram.prog.
+     */
+    public static void main(String[] args) throws Exception {
+        String filter = (args.length > 0) ? args[0] : null;
+        Bench bench = new Bench();
+        if (args.length > 1)
+            bench.setIterations(Integer.parseInt(args[1]));
+        String full = readProgram("fullprogram.prog");
+        ProgramNode fullProgram = parse(full);
+
+        bench.add("parse", "full", () -> parse(full).hashCode());
+        for (int size : new int[] { 10, 100, 1000 }) {
+            String text = new ProgramGenerator(PROGRAM_SEED).setStatements(size).generate();
+            bench.add("parse", String.valueOf(size), () -> parse(text).hashCode());
+        }
+        for (int depth : new int[] { 2, 4, 8 }) {
+            IntNode expression = parseExpression(expression(depth));
+            Robot robot = standIn(10);
+            bench.add("expr", String.valueOf(depth), () -> expression.evaluate(robot));
+        }
+        for (int depth : new int[] { 2, 4, 8 }) {
+            BooleanNode condition = parseCondition(condition(depth));
+            Robot robot = standIn(10);
+            bench.add("cond", String.valueOf(depth), () -> condition.evaluate(robot) ? 1 : 0);
+        }
+        for (int barrels : new int[] { 0, 10, 100 }) {
+            Robot robot = standIn(barrels);
+            bench.add("pending", String.valueOf(barrels), () -> {
+                robot.updatePending();
+                return robot.numBarrels();
+            });
+        }
+        for (int size : new int[] { 10, 100, 1000 }) {
+            ProgramNode program = parse(matchProgram(size));
+            long[] seed = { 0 };
+            bench.add("match", String.valueOf(size), () ->
+                      new Match(program, fullProgram, ++seed[0]).setFastForward(false).play().turns);
+        }
+        bench.run(filter, System.out);
+    }
+
+    private static String readProgram(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)));
+    }
+}
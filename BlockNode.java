@@ -0,0 +1,22 @@
+import java.util.List;
+
+class BlockNode implements ProgramNode{
+    final List<ProgramNode> statementList;
+    
+    public BlockNode(List<ProgramNode> statementList){this.statementList = statementList;}
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        for (ProgramNode p : statementList){
+            p.execute(robot);
+        }
+    }
+    
+    public String toString(){
+        String ans = "{";
+        for (ProgramNode n : statementList){
+            ans += n.toString();
+        }
+        return ans + "}";
+    }
+}
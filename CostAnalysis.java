@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounds, without running it, how many nodes a program can evaluate between
+ * two of its actions, counted as Robot.countNode counts them. The start of the
+ * program and its end count as actions.
+ *
+ * Between two actions no turn passes, so the sensors read the same and only
+ * the program's own variables can change. A loop whose body can go round
+ * without acting therefore goes round forever once it does, unless the body
+ * assigns a variable it reads: such a loop is unbounded, and one that does
+ * assign is budget-dependent, bounded only by the values it meets (and in a
+ * match by Robot.NODE_BUDGET). Everything else is bounded.
+ *
+ * A program is stuck if it can not act at all before it spins: it never acts
+ * whatever the sensors read, and there is no point in playing it.
+ */
+public class CostAnalysis {
+
+    /** The cost classes, cheapest first */
+    public enum Cost { BOUNDED, BUDGET_DEPENDENT, UNBOUNDED }
+
+    private static final long NONE = -1;                   // no such path
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private Cost cost = Cost.BOUNDED;
+    private final long bound;
+    private final boolean stuck;
+    private final List<String> findings = new ArrayList<>();
+
+    /** Analyse a program, or null for the default program, which is bounded */
+    public CostAnalysis(ProgramNode program) {
+        if (program == null) {
+            bound = 0;
+            stuck = false;
+            return;
+        }
+        Paths paths = statement(program);
+        bound = Math.max(Math.max(paths.through, paths.head), Math.max(paths.tail, paths.inside));
+        stuck = paths.stuck;
+    }
+
+    public Cost getCost() {
+        return cost;
+    }
+
+    /** The most nodes evaluated between two actions, or -1 if it is not bounded */
+    public long getBound() {
+        return (bound == UNLIMITED) ? -1 : bound;
+    }
+
+    /** True if the program spins before it can ever act */
+    public boolean isStuck() {
+        return stuck;
+    }
+
+    /** The statements that were flagged, a line each: loops that can spin, and move or wait by an expression */
+    public List<String> getFindings() {
+        return findings;
+    }
+
+    public String toString() {
+        String text = stuck ? "stuck, never acts" : switch (cost) {
+        case BOUNDED -> "bounded, at most " + bound + " nodes between actions";
+        case BUDGET_DEPENDENT -> "budget-dependent";
+        case UNBOUNDED -> "unbounded compute";
+        };
+        for (String finding : findings)
+            text += "\n  " + finding;
+        return text;
+    }
+
+    /**
+     * The longest runs of nodes without an action through one statement:
+     * from its start to its end, from its start to its first action, from its
+     * last action to its end, and between two actions within it. NONE where
+     * there is no such run, UNLIMITED where it has no bound.
+     */
+    private static class Paths {
+        long through = NONE, head = NONE, tail = NONE, inside = NONE;
+        boolean stuck;
+
+        static Paths passing(long cost) {
+            Paths paths = new Paths();
+            paths.through = cost;
+            return paths;
+        }
+
+        static Paths acting(long cost) {
+            Paths paths = new Paths();
+            paths.head = cost;
+            paths.tail = 0;
+            return paths;
+        }
+
+        /** This statement followed by the next */
+        Paths then(Paths next) {
+            Paths paths = new Paths();
+            paths.through = add(through, next.through);
+            paths.head = Math.max(head, add(through, next.head));
+            paths.tail = Math.max(next.tail, add(tail, next.through));
+            paths.inside = Math.max(Math.max(inside, next.inside), add(tail, next.head));
+            paths.stuck = stuck || (head == NONE && through != NONE && next.stuck);
+            return paths;
+        }
+
+        /** Either this statement or the other */
+        Paths or(Paths other) {
+            Paths paths = new Paths();
+            paths.through = Math.max(through, other.through);
+            paths.head = Math.max(head, other.head);
+            paths.tail = Math.max(tail, other.tail);
+            paths.inside = Math.max(inside, other.inside);
+            paths.stuck = stuck && other.stuck;
+            return paths;
+        }
+
+        /** The same paths with a cost paid at the start */
+        Paths after(long cost) {
+            Paths paths = new Paths();
+            paths.through = add(cost, through);
+            paths.head = add(cost, head);
+            paths.tail = tail;
+            paths.inside = inside;
+            paths.stuck = stuck;
+            return paths;
+        }
+    }
+
+    private static long add(long a, long b) {
+        if (a == NONE || b == NONE)
+            return NONE;
+        if (a == UNLIMITED || b == UNLIMITED)
+            return UNLIMITED;
+        return a + b;
+    }
+
+    // ---------------------------------------------------------------
+    // Statements
+
+    private Paths statement(ProgramNode node) {
+        if (node instanceof ProgNode prog)
+            return sequence(prog.programList).after(1);
+        if (node instanceof BlockNode block)
+            return sequence(block.statementList).after(1);
+        if (node instanceof StatementNode s)
+            return statement(s.statement).after(1);
+        if (node instanceof ActionNode a)
+            return statement(a.action).after(1);
+        if (node instanceof LoopNode loop)
+            return loop(loop, null, loop.block);
+        if (node instanceof WhileNode w)
+            return loop(w, w.condition, w.block);
+        if (node instanceof IfNode i) {
+            Paths otherwise = (i.block2 == null) ? Paths.passing(0) : statement(i.block2);
+            return statement(i.block).or(otherwise).after(1 + condition(i.condition, null));
+        }
+        if (node instanceof IfElseIfNode i)
+            return branches(i.cond, i.blockT, i.listOfMaps, Paths.passing(0));
+        if (node instanceof IfElseIfElseNode i)
+            return branches(i.cond, i.blockT, i.listOfMaps, statement(i.blockF));
+        if (node instanceof AssgnNode a)
+            return Paths.passing(1 + expression(a.num, null));
+        if (node instanceof MoveVarNode m)
+            return repeated(m, m.expr);
+        if (node instanceof WaitVarNode w)
+            return repeated(w, w.expr);
+        if (node instanceof ShieldOnNode || node instanceof ShieldOffNode)
+            return Paths.passing(1);
+        // one of the other actions, which always take a turn
+        return Paths.acting(1);
+    }
+
+    private Paths sequence(List<ProgramNode> statements) {
+        Paths paths = Paths.passing(0);
+        for (ProgramNode statement : statements)
+            paths = paths.then(statement(statement));
+        return paths;
+    }
+
+    /** An if with elifs: each branch is reached after the conditions before it */
+    private Paths branches(BooleanNode first, ProgramNode then, List<Map<BooleanNode, ProgramNode>> elifs,
+                           Paths otherwise) {
+        long conditions = 1 + condition(first, null);
+        Paths paths = statement(then).after(conditions);
+        for (Map<BooleanNode, ProgramNode> map : elifs) {
+            for (Map.Entry<BooleanNode, ProgramNode> entry : map.entrySet()) {
+                conditions += condition(entry.getKey(), null);
+                paths = paths.or(statement(entry.getValue()).after(conditions));
+            }
+        }
+        return paths.or(otherwise.after(conditions));
+    }
+
+    /** move(expr) and wait(expr), which do not act at all if expr is 0 or less */
+    private Paths repeated(ProgramNode node, IntNode turns) {
+        long cost = 1 + expression(turns, null);
+        if (turns instanceof NumNode || turns instanceof ExprNode)
+            return (turns.evaluate(null) > 0) ? Paths.acting(cost) : Paths.passing(cost);
+        findings.add("may not act, for as many turns as it reads: " + brief(node));
+        return Paths.passing(cost).or(Paths.acting(cost));
+    }
+
+    /** A loop forever (with no condition) or a while loop */
+    private Paths loop(ProgramNode node, BooleanNode condition, ProgramNode block) {
+        Set<String> reads = new HashSet<>();
+        long test = (condition == null) ? 0 : condition(condition, reads);
+        Paths body = statement(block);
+        Paths paths = new Paths();
+        if (body.through == NONE) {
+            // every round acts, so a run of nodes spans at most the end of one round and the start of the next
+            paths.head = add(1 + test, body.head);
+            paths.inside = Math.max(body.inside, add(add(body.tail, test), body.head));
+            if (condition != null) {
+                paths.through = 1 + test;
+                paths.tail = add(body.tail, test);
+            }
+            paths.stuck = body.stuck && condition == null;
+            return paths;
+        }
+        Set<String> assigns = new HashSet<>();
+        reads(block, reads, assigns);
+        reads.retainAll(assigns);
+        Cost spin = reads.isEmpty() ? Cost.UNBOUNDED : Cost.BUDGET_DEPENDENT;
+        if (spin.compareTo(cost) > 0)
+            cost = spin;
+        findings.add((spin == Cost.UNBOUNDED ? "can spin forever: " : "can spin while its variables change: ") + brief(node));
+        paths.head = (body.head == NONE) ? NONE : UNLIMITED;
+        paths.inside = (body.head == NONE) ? body.inside : UNLIMITED;
+        if (condition != null) {
+            paths.through = UNLIMITED;
+            paths.tail = (body.tail == NONE) ? NONE : UNLIMITED;
+        }
+        // a loop forever whose body never acts holds the robot for good
+        paths.stuck = condition == null && (body.head == NONE || body.stuck);
+        return paths;
+    }
+
+    private static String brief(ProgramNode node) {
+        String text = node.toString();
+        return (text.length() <= 60) ? text : text.substring(0, 57) + "...";
+    }
+
+    /** The variables a statement reads and assigns, at any depth */
+    private static void reads(ProgramNode node, Set<String> reads, Set<String> assigns) {
+        if (node instanceof ProgNode prog)
+            prog.programList.forEach(p -> reads(p, reads, assigns));
+        else if (node instanceof BlockNode block)
+            block.statementList.forEach(p -> reads(p, reads, assigns));
+        else if (node instanceof StatementNode s)
+            reads(s.statement, reads, assigns);
+        else if (node instanceof ActionNode a)
+            reads(a.action, reads, assigns);
+        else if (node instanceof LoopNode loop)
+            reads(loop.block, reads, assigns);
+        else if (node instanceof WhileNode w) {
+            condition(w.condition, reads);
+            reads(w.block, reads, assigns);
+        } else if (node instanceof IfNode i) {
+            condition(i.condition, reads);
+            reads(i.block, reads, assigns);
+            if (i.block2 != null)
+                reads(i.block2, reads, assigns);
+        } else if (node instanceof IfElseIfNode i) {
+            condition(i.cond, reads);
+            reads(i.blockT, reads, assigns);
+            elifReads(i.listOfMaps, reads, assigns);
+        } else if (node instanceof IfElseIfElseNode i) {
+            condition(i.cond, reads);
+            reads(i.blockT, reads, assigns);
+            elifReads(i.listOfMaps, reads, assigns);
+            reads(i.blockF, reads, assigns);
+        } else if (node instanceof AssgnNode a) {
+            expression(a.num, reads);
+            assigns.add(a.variable);
+        } else if (node instanceof MoveVarNode m)
+            expression(m.expr, reads);
+        else if (node instanceof WaitVarNode w)
+            expression(w.expr, reads);
+    }
+
+    private static void elifReads(List<Map<BooleanNode, ProgramNode>> elifs, Set<String> reads, Set<String> assigns) {
+        for (Map<BooleanNode, ProgramNode> map : elifs) {
+            for (Map.Entry<BooleanNode, ProgramNode> entry : map.entrySet()) {
+                condition(entry.getKey(), reads);
+                reads(entry.getValue(), reads, assigns);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Conditions and expressions: the nodes they count, and the variables they read
+
+    private static long condition(BooleanNode node, Set<String> reads) {
+        if (node instanceof AndNode a)
+            return 1 + condition(a.cond1, reads) + condition(a.cond2, reads);
+        if (node instanceof OrNode o)
+            return 1 + condition(o.cond1, reads) + condition(o.cond2, reads);
+        if (node instanceof NotNode n)
+            return 1 + condition(n.cond1, reads);
+        if (node instanceof GreaterNode g)
+            return 1 + expression(g.compare, reads) + expression(g.value, reads);
+        if (node instanceof LessNode l)
+            return 1 + expression(l.compare, reads) + expression(l.value, reads);
+        if (node instanceof EqualNode e)
+            return 1 + expression(e.compare, reads) + expression(e.value, reads);
+        return 1;
+    }
+
+    private static long expression(IntNode node, Set<String> reads) {
+        if (node instanceof NumNode || node instanceof ExprNode)
+            return 0;
+        if (node instanceof AddNode a)
+            return 1 + expression(a.expr1, reads) + expression(a.expr2, reads);
+        if (node instanceof SubNode s)
+            return 1 + expression(s.expr1, reads) + expression(s.expr2, reads);
+        if (node instanceof MulNode m)
+            return 1 + expression(m.expr1, reads) + expression(m.expr2, reads);
+        if (node instanceof DivNode d)
+            return 1 + expression(d.expr1, reads) + expression(d.expr2, reads);
+        if (node instanceof BarrelLrNode b && b.num != null)
+            return 1 + expression(b.num, reads);
+        if (node instanceof BarrelFbNode b && b.num != null)
+            return 1 + expression(b.num, reads);
+        if (node instanceof BarrelDistNode b && b.num != null)
+            return 1 + expression(b.num, reads);
+        if (node instanceof BarrelActNode b && b.num != null)
+            return 1 + expression(b.num, reads);
+        if (node instanceof VarNode v && reads != null)
+            reads.add(v.name);
+        return 1;
+    }
+}
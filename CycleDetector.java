@@ -0,0 +1,164 @@
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spots headless matches whose play has started to repeat, and skips ahead
+ * to where the repetition ends.
+ *
+ * At every turn, once both robots have chosen their action, the state that
+ * decides the rest of the match (positions, directions, shields, barrels and
+ * each robot's place in its program and variables) is compared with the
+ * turns before. Fuel is left out of that state, so a repeat means the robots
+ * will go round the same loop again, spending the same fuel, for as long as
+ * (a) neither of them looks at its fuel or gains any, and (b) no fuel drops on
+ * an empty cell. The first is checked over the loop that was just seen, the
+ * second by running the world's random numbers forward, so whole loops can be
+ * skipped without changing the outcome.
+ *
+ * When both programs have finished the robots just wait, and the outcome
+ * is worked out directly.
+ */
+public class CycleDetector {
+
+    private static final int WINDOW = 64;   // the longest loop that is looked for
+
+    private final World world;
+    private final int maxTurns;
+    private final Map<List<Object>, Integer> seen = new HashMap<>();
+    private final Object[] keys = new Object[WINDOW];
+    private final int[] used1 = new int[WINDOW], used2 = new int[WINDOW];   // fuel used by each turn
+    private final boolean[] plain = new boolean[WINDOW];                    // no fuel sensed or changing hands
+    private int lastTurn = -1, lastFuel1, lastFuel2;
+    private Match.Result outcome;
+
+    public CycleDetector(World world, int maxTurns) {
+        this.world = world;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Called once both robots have chosen their action for the given turn.
+     * Returns the number of turns skipped; if the match has been decided
+     * outright, outcome() gives the result.
+     */
+    public int fastForward(int turn) {
+        Robot robot1 = world.getRobot(1);
+        Robot robot2 = world.getRobot(2);
+        int fuel1 = robot1.getFuelLevel();
+        int fuel2 = robot2.getFuelLevel();
+
+        if (robot1.isFinished() && robot2.isFinished()) {
+            decideIdleMatch(turn, fuel1, robot1.getIdleCost(), fuel2, robot2.getIdleCost());
+            return 0;
+        }
+
+        boolean event = robot1.takeFuelEvent() | robot2.takeFuelEvent();
+        if (lastTurn >= 0 && lastTurn == turn - 1) {
+            int slot = lastTurn % WINDOW;
+            used1[slot] = lastFuel1 - fuel1;
+            used2[slot] = lastFuel2 - fuel2;
+            plain[slot] = !event;
+        }
+        lastTurn = turn;
+        lastFuel1 = fuel1;
+        lastFuel2 = fuel2;
+
+        List<Object> key = List.of(barrelCells(), robot1.getStateKey(), robot2.getStateKey());
+        Integer start = seen.get(key);
+        int slot = turn % WINDOW;
+        if (keys[slot] != null)
+            seen.remove(keys[slot], turn - WINDOW);
+        keys[slot] = key;
+        seen.put(key, turn);
+
+        if (start != null && turn - start <= WINDOW && isPlain(start, turn)) {
+            return skipLoops(turn, start, fuel1, fuel2);
+        }
+        return 0;
+    }
+
+    /** The result, if the match was decided without playing it out */
+    public Match.Result outcome() {
+        return outcome;
+    }
+
+    private boolean isPlain(int from, int to) {
+        for (int t = from; t < to; t++) {
+            if (!plain[t % WINDOW])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Play the loop from start to turn over again, using only the fuel used
+     * and the random fuel drops, until a robot runs out of fuel or a drop
+     * lands on an empty cell. Skips all the loops completed before that.
+     */
+    private int skipLoops(int turn, int start, int fuel1, int fuel2) {
+        int period = turn - start;
+        Set<Point> barrels = world.getAvailableFuel();
+        WorldRandom rand = world.copyRandom();
+        WorldRandom randAtLoop = rand.copy();
+        int f1 = fuel1, f2 = fuel2, loopF1 = fuel1, loopF2 = fuel2;
+        int skipped = 0;
+        for (int k = 0; ; ) {
+            if (turn + k >= maxTurns) {
+                outcome = new Match.Result(0, maxTurns);
+                return 0;
+            }
+            int slot = (start + k % period) % WINDOW;
+            f1 -= used1[slot];
+            f2 -= used2[slot];
+            Point drop = World.nextFuelDrop(rand, false);
+            k++;
+            if (f1 <= 0 || f2 <= 0) {
+                outcome = new Match.Result((f1 <= 0 && f2 <= 0) ? 0 : (f1 <= 0) ? 2 : 1, turn + k);
+                return 0;
+            }
+            if (drop != null && !barrels.contains(drop))
+                break;
+            if (k % period == 0) {
+                skipped = k;
+                loopF1 = f1;
+                loopF2 = f2;
+                randAtLoop = rand.copy();
+            }
+        }
+        if (skipped > 0) {
+            world.getRobot(1).skipTurns(fuel1 - loopF1);
+            world.getRobot(2).skipTurns(fuel2 - loopF2);
+            world.setRandom(randAtLoop);
+            // the turn numbers in the history no longer line up
+            seen.clear();
+            Arrays.fill(keys, null);
+            lastTurn = -1;
+        }
+        return skipped;
+    }
+
+    /** Both robots will wait until they run out of fuel */
+    private void decideIdleMatch(int turn, int fuel1, int cost1, int fuel2, int cost2) {
+        int left1 = (fuel1 + cost1 - 1) / cost1;
+        int left2 = (fuel2 + cost2 - 1) / cost2;
+        int left = Math.min(left1, left2);
+        if (turn + left > maxTurns)
+            outcome = new Match.Result(0, maxTurns);
+        else
+            outcome = new Match.Result((left1 == left2) ? 0 : (left1 < left2) ? 2 : 1, turn + left);
+    }
+
+    /** The barrels as a set of cell numbers */
+    private List<Long> barrelCells() {
+        long[] bits = new long[3];
+        for (Point p : world.getAvailableFuel()) {
+            int cell = p.y * World.SIZE + p.x;
+            bits[cell / 64] |= 1L << (cell % 64);
+        }
+        return List.of(bits[0], bits[1], bits[2]);
+    }
+}
@@ -0,0 +1,497 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that every way of running a program behaves as the tree walk of
+ * ProgramNode.execute does. Each engine runs the program against the same
+ * made-up sensor readings, which depend only on the seed, the turn, the
+ * sensor and its argument. The steps are compared one by one: each step is
+ * an action, with the variables and the shield as they were when it was
+ * taken. A run ends when the program stops, when it loops without acting
+ * (a forfeit), or when it has taken maxSteps actions.
+ *
+ * The engines are the tree walk itself, the Profiler's probed copy of the
+ * tree, and BatchInterpreter, which runs every seed at once as the matches
+ * of a batch. Any program that comes out differently is cut down to as few
+ * lines as still show the difference.
+ */
+public class Differential {
+
+    private static final int SPIN_NODES = Robot.NODE_BUDGET;   // nodes evaluated without acting before a tree walk forfeits
+    private static final String[] ACTIONS = Metrics.ACTIONS;
+
+    /** Runs a program once for each seed, giving the steps of each run */
+    public interface Engine {
+        List<List<String>> run(ProgramNode program, long[] seeds, int maxSteps);
+    }
+
+    /** ProgramNode.execute, against which the others are checked */
+    public static final Engine TREE = (program, seeds, maxSteps) -> {
+        List<List<String>> runs = new ArrayList<>();
+        for (long seed : seeds)
+            runs.add(new ScriptedRobot(seed, maxSteps).play(program));
+        return runs;
+    };
+
+    public static final Engine PROFILED = (program, seeds, maxSteps) ->
+        TREE.run(new Profiler(program).getProgram(), seeds, maxSteps);
+
+    public static final Engine BATCH = (program, seeds, maxSteps) -> {
+        ScriptedBatchWorld world = new ScriptedBatchWorld(seeds, maxSteps);
+        BatchInterpreter interpreter = new BatchInterpreter(world, 1, program,
+                                                            (batch, robot, match) -> Robot.ACTION_WAIT);
+        world.interpreter = interpreter;
+        interpreter.run();
+        return world.runs();
+    };
+
+    private final Map<String, Engine> engines = new LinkedHashMap<>();
+    private int seeds = 8;
+    private int maxSteps = 200;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public Differential() {
+        engines.put("profiled", PROFILED);
+        engines.put("batch", BATCH);
+    }
+
+    /** Check another engine against the tree walk too */
+    public Differential addEngine(String name, Engine engine) {
+        engines.put(name, engine);
+        return this;
+    }
+
+    /** Sensor seeds to run each program with */
+    public Differential setSeeds(int seeds) {
+        this.seeds = seeds;
+        return this;
+    }
+
+    public Differential setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    public Differential setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /** Where an engine first differed from the tree walk */
+    public static class Divergence {
+        public final String name, engine;
+        public final long seed;
+        public final int step;
+        public final String expected, actual;
+        public final String program;   // cut down
+
+        Divergence(String name, String engine, long seed, int step, String expected, String actual, String program) {
+            this.name = name;
+            this.engine = engine;
+            this.seed = seed;
+            this.step = step;
+            this.expected = expected;
+            this.actual = actual;
+            this.program = program;
+        }
+
+        public String toString() {
+            return name + ": " + engine + " differs with seed " + seed + " at step " + step
+                + "\n  tree:   " + expected + "\n  " + engine + ": " + actual + "\n" + program;
+        }
+    }
+
+    /**
+     * Check the named programs, in parallel; gives the divergences in the
+     * order of the programs, at most one for each.
+     */
+    public List<Divergence> check(Map<String, String> programs) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Divergence>> results = new ArrayList<>();
+            for (Map.Entry<String, String> program : programs.entrySet()) {
+                Callable<Divergence> task = () -> check(program.getKey(), program.getValue());
+                results.add(pool.submit(task));
+            }
+            List<Divergence> divergences = new ArrayList<>();
+            for (Future<Divergence> result : results) {
+                Divergence divergence = result.get();
+                if (divergence != null)
+                    divergences.add(divergence);
+            }
+            return divergences;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Check failed", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Check one program against every engine; null if they all agree */
+    public Divergence check(String name, String text) {
+        ProgramNode program = parse(text);
+        long[] seedList = seedList();
+        List<List<String>> expected = TREE.run(program, seedList, maxSteps);
+        for (Map.Entry<String, Engine> engine : engines.entrySet()) {
+            List<List<String>> actual = engine.getValue().run(program, seedList, maxSteps);
+            for (int i = 0; i < seedList.length; i++) {
+                int step = firstDifference(expected.get(i), actual.get(i));
+                if (step < 0)
+                    continue;
+                long seed = seedList[i];
+                String shrunk = shrink(text, engine.getValue(), seed);
+                return new Divergence(name, engine.getKey(), seed, step, at(expected.get(i), step),
+                                      at(actual.get(i), step), shrunk);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cut the program down for as long as it still differs on the seed:
+     * drop whole statements, and take the bodies of while, loop and plain if
+     * statements out of them. What is left has no statement that can be
+     * dropped or unwrapped on its own. Works on lines, so expects one
+     * statement or brace to a line, as ProgramGenerator writes them.
+     */
+    public String shrink(String text, Engine engine, long seed) {
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\n")));
+        boolean cut = true;
+        while (cut) {
+            cut = false;
+            for (int from = 0; from < lines.size() && !cut; from++) {
+                if (lines.get(from).trim().startsWith("}"))
+                    continue;   // not the start of a statement
+                int to = end(lines, from);
+                List<String> dropped = new ArrayList<>(lines.subList(0, from));
+                dropped.addAll(lines.subList(to + 1, lines.size()));
+                List<String> unwrapped = null;
+                if (to > from && lines.get(to).trim().equals("}") && !hasElse(lines, from, to)) {
+                    unwrapped = new ArrayList<>(lines.subList(0, from));
+                    unwrapped.addAll(lines.subList(from + 1, to));
+                    unwrapped.addAll(lines.subList(to + 1, lines.size()));
+                }
+                if (differs(String.join("\n", dropped), engine, seed)) {
+                    lines = dropped;
+                    cut = true;
+                } else if (unwrapped != null && differs(String.join("\n", unwrapped), engine, seed)) {
+                    lines = unwrapped;
+                    cut = true;
+                }
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    /** The last line of the statement starting on the given line: where its braces balance */
+    private static int end(List<String> lines, int from) {
+        int depth = 0;
+        for (int i = from; i < lines.size(); i++) {
+            depth += braces(lines.get(i));
+            if (depth <= 0)
+                return i;
+        }
+        return lines.size() - 1;
+    }
+
+    /** Whether an if has elif or else blocks: a line at its own depth that carries on after a brace */
+    private static boolean hasElse(List<String> lines, int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            depth += braces(lines.get(i));
+            if (depth == 1 && lines.get(i + 1).trim().startsWith("}") && i + 1 < to)
+                return true;
+        }
+        return false;
+    }
+
+    private static int braces(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '{')
+                count++;
+            else if (line.charAt(i) == '}')
+                count--;
+        }
+        return count;
+    }
+
+    private boolean differs(String text, Engine engine, long seed) {
+        ProgramNode program;
+        try {
+            program = parse(text);
+        } catch (ParserFailureException e) {
+            return false;
+        }
+        long[] one = { seed };
+        try {
+            return firstDifference(TREE.run(program, one, maxSteps).get(0),
+                                   engine.run(program, one, maxSteps).get(0)) >= 0;
+        } catch (RuntimeException e) {
+            return true;    // the engine failed outright
+        }
+    }
+
+    private long[] seedList() {
+        long[] list = new long[seeds];
+        for (int i = 0; i < seeds; i++)
+            list[i] = i + 1;
+        return list;
+    }
+
+    private static ProgramNode parse(String text) {
+        return new Parser().parse(new Scanner(text));
+    }
+
+    private static int firstDifference(List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            if (!at(expected, i).equals(at(actual, i)))
+                return i;
+        }
+        return -1;
+    }
+
+    private static String at(List<String> steps, int i) {
+        return (i < steps.size()) ? steps.get(i) : "(nothing)";
+    }
+
+    /** One step: the action, the variables other than 0, and the shield if it is on */
+    private static String describe(int action, Map<String, Integer> variables, boolean shield) {
+        StringBuilder step = new StringBuilder(ACTIONS[action]);
+        for (Map.Entry<String, Integer> variable : new TreeMap<>(variables).entrySet()) {
+            if (variable.getValue() != 0)
+                step.append(' ').append(variable.getKey()).append('=').append(variable.getValue());
+        }
+        if (shield)
+            step.append(" shield");
+        return step.toString();
+    }
+
+    // ---------------------------------------------------------------
+    // Made-up sensors
+
+    private static final int FUEL = 0, OPPONENT_LR = 1, OPPONENT_FB = 2, NUM_BARRELS = 3,
+        BARREL_LR = 4, BARREL_FB = 5, WALL_DISTANCE = 6, BARREL_DISTANCE = 7, BARREL_ACTION = 8;
+
+    /** A sensor reading that depends only on its seed, turn, sensor and argument */
+    static int sense(long seed, int turn, int sensor, int n) {
+        long h = seed * 0x9E3779B97F4A7C15L + turn * 0xC2B2AE3D27D4EB4FL + sensor * 0x165667B19E3779F9L + n;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        int r = (int) ((h ^ (h >>> 33)) >>> 33);
+        switch (sensor) {
+        case FUEL: return r % 101;
+        case NUM_BARRELS: return r % 5;
+        case WALL_DISTANCE: return r % World.SIZE;
+        case BARREL_DISTANCE: return r % (4 * World.SIZE);
+        case BARREL_ACTION: return 1 + r % Robot.ACTION_TAKE_FUEL;
+        default: return r % (2 * World.SIZE - 1) - (World.SIZE - 1);
+        }
+    }
+
+    private static int barrel(long seed, int turn, int sensor, int n) {
+        if (n < 0)
+            throw new IndexOutOfBoundsException("barrel " + n);
+        return (n >= sense(seed, turn, NUM_BARRELS, 0)) ? Robot.INFINITY : sense(seed, turn, sensor, n);
+    }
+
+    /** Why a run ended, as its last step */
+    private static final String STOPPED = "end", CUT = "end: step limit", FORFEIT = "end: forfeit";
+
+    @SuppressWarnings("serial")
+    private static class Ended extends RuntimeException {
+        final String why;
+
+        Ended(String why) {
+            super(why, null, false, false);
+            this.why = why;
+        }
+    }
+
+    /** A robot that plays against the made-up sensors, writing down its steps */
+    private static class ScriptedRobot extends Robot {
+        private final long seed;
+        private final int maxSteps;
+        private final List<String> steps = new ArrayList<>();
+        private boolean shieldOn;
+        private int spin;
+
+        ScriptedRobot(long seed, int maxSteps) {
+            super(new World(seed, true), 0, 0, World.COLOURS[1], false);
+            this.seed = seed;
+            this.maxSteps = maxSteps;
+        }
+
+        List<String> play(ProgramNode program) {
+            String why = STOPPED;
+            try {
+                program.execute(this);
+            } catch (Ended e) {
+                why = e.why;
+            } catch (RuntimeException e) {
+                // a program that fails just ends, as in a headless match
+            }
+            steps.add(why);
+            return steps;
+        }
+
+        private void act(int action, int turns) {
+            for (int i = 0; i < turns; i++) {
+                spin = 0;
+                steps.add(describe(action, variables, shieldOn));
+                if (steps.size() >= maxSteps)
+                    throw new Ended(CUT);
+            }
+        }
+
+        private int turn() {
+            return steps.size();
+        }
+
+        @Override
+        void countNode() {
+            if (++spin > SPIN_NODES)
+                throw new Ended(FORFEIT);
+        }
+
+        @Override public void move() { act(ACTION_MOVE, 1); }
+        @Override public void move(int turns) { act(ACTION_MOVE, turns); }
+        @Override public void turnLeft() { act(ACTION_TURN_LEFT, 1); }
+        @Override public void turnRight() { act(ACTION_TURN_RIGHT, 1); }
+        @Override public void turnAround() { act(ACTION_TURN_AROUND, 1); }
+        @Override public void takeFuel() { act(ACTION_TAKE_FUEL, 1); }
+        @Override public void idleWait() { act(ACTION_WAIT, 1); }
+        @Override public void idleWait(int turns) { act(ACTION_WAIT, turns); }
+        @Override public void setShield(boolean shield) { shieldOn = shield; }
+        @Override public boolean isShieldOn() { return shieldOn; }
+
+        @Override public int getFuel() { return sense(seed, turn(), FUEL, 0); }
+        @Override public int getOpponentLR() { return sense(seed, turn(), OPPONENT_LR, 0); }
+        @Override public int getOpponentFB() { return sense(seed, turn(), OPPONENT_FB, 0); }
+        @Override public int numBarrels() { return sense(seed, turn(), NUM_BARRELS, 0); }
+        @Override public int getDistanceToWall() { return sense(seed, turn(), WALL_DISTANCE, 0); }
+        @Override public int getClosestBarrelLR() { return getBarrelLR(0); }
+        @Override public int getClosestBarrelFB() { return getBarrelFB(0); }
+        @Override public int getBarrelLR(int n) { return barrel(seed, turn(), BARREL_LR, n); }
+        @Override public int getBarrelFB(int n) { return barrel(seed, turn(), BARREL_FB, n); }
+        @Override public int getBarrelDistance(int n) { return barrel(seed, turn(), BARREL_DISTANCE, n); }
+        @Override public int getBarrelAction(int n) { return barrel(seed, turn(), BARREL_ACTION, n); }
+    }
+
+    /** A batch whose matches play against the made-up sensors, one seed each */
+    private static class ScriptedBatchWorld extends BatchWorld {
+        private final long[] seeds;
+        private final int maxSteps;
+        private final List<List<String>> steps = new ArrayList<>();
+        private final boolean[] shieldOn, forfeited, over;
+        private int live;
+        BatchInterpreter interpreter;
+
+        ScriptedBatchWorld(long[] seeds, int maxSteps) {
+            super(seeds);
+            this.seeds = seeds;
+            this.maxSteps = maxSteps;
+            for (int i = 0; i < size; i++)
+                steps.add(new ArrayList<>());
+            shieldOn = new boolean[size];
+            forfeited = new boolean[size];
+            over = new boolean[size];
+            live = size;
+        }
+
+        List<List<String>> runs() {
+            for (int i = 0; i < size; i++)
+                steps.get(i).add(forfeited[i] ? FORFEIT : (steps.get(i).size() >= maxSteps) ? CUT : STOPPED);
+            return steps;
+        }
+
+        /** Write down the steps; a match ends at the step limit, or when its program has finished */
+        @Override
+        public void step(int[] actions1, int[] actions2, boolean[] matches) {
+            for (int i = 0; i < size; i++) {
+                if (over[i] || (matches != null && !matches[i]))
+                    continue;
+                if (actions1[i] != 0)
+                    steps.get(i).add(describe(actions1[i], interpreter.getVariables(i), shieldOn[i]));
+                if (actions1[i] == 0 || steps.get(i).size() >= maxSteps)
+                    end(i);
+            }
+        }
+
+        private void end(int match) {
+            if (!over[match])
+                live--;
+            over[match] = true;
+        }
+
+        @Override public boolean isOver(int match) { return over[match]; }
+        @Override public int getLive() { return live; }
+        @Override public int getWinner(int match) { return 0; }
+
+        @Override
+        public void forfeit(int robot, int match) {
+            forfeited[match] = true;
+            end(match);
+        }
+
+        @Override public void setShield(int robot, int match, boolean on) { shieldOn[match] = on; }
+        @Override public boolean isShieldOn(int robot, int match) { return shieldOn[match]; }
+
+        private int turn(int match) {
+            return steps.get(match).size();
+        }
+
+        @Override public int getFuel(int robot, int match) { return sense(seeds[match], turn(match), FUEL, 0); }
+        @Override public int getOpponentLR(int robot, int match) { return sense(seeds[match], turn(match), OPPONENT_LR, 0); }
+        @Override public int getOpponentFB(int robot, int match) { return sense(seeds[match], turn(match), OPPONENT_FB, 0); }
+        @Override public int numBarrels(int robot, int match) { return sense(seeds[match], turn(match), NUM_BARRELS, 0); }
+        @Override public int getDistanceToWall(int robot, int match) { return sense(seeds[match], turn(match), WALL_DISTANCE, 0); }
+        @Override public int getBarrelLR(int robot, int match, int n) { return barrel(seeds[match], turn(match), BARREL_LR, n); }
+        @Override public int getBarrelFB(int robot, int match, int n) { return barrel(seeds[match], turn(match), BARREL_FB, n); }
+        @Override public int getBarrelDistance(int robot, int match, int n) { return barrel(seeds[match], turn(match), BARREL_DISTANCE, n); }
+        @Override public int getBarrelAction(int robot, int match, int n) { return barrel(seeds[match], turn(match), BARREL_ACTION, n); }
+    }
+
+    /**
+     * Usage: Differential generated [statements [programFile...]]
+     * Checks that many programs from ProgramGenerator, and the given
+     * programs, run the same under every engine, and prints each difference
+     * with its program cut down.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Differential generated [statements [programFile...]]");
+            return;
+        }
+        int generated = Integer.parseInt(args[0]);
+        int statements = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        Map<String, String> programs = new LinkedHashMap<>();
+        for (int i = 2; i < args.length; i++)
+            programs.put(args[i], new String(Files.readAllBytes(Paths.get(args[i]))));
+        for (int seed = 1; seed <= generated; seed++)
+            programs.put("generated " + seed, new ProgramGenerator(seed).setStatements(statements).generate());
+
+        long start = System.nanoTime();
+        List<Divergence> divergences = new Differential().check(programs);
+        for (Divergence divergence : divergences)
+            System.out.println(divergence);
+        System.out.printf("%d programs, %d differ (%.1f s)%n",
+                          programs.size(), divergences.size(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,23 @@
+class DivNode implements IntNode{
+    final String operator = "/";
+    
+    IntNode expr1;
+    
+    IntNode expr2;
+    
+    public DivNode(IntNode expr1, IntNode expr2){
+        this.expr1 = expr1;
+        this.expr2 = expr2;
+    }
+    
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        return expr1.evaluate(robot) / expr2.evaluate(robot);
+    }
+    
+    public String toString(){
+        return "div(" + expr1.toString() + "," + expr2.toString() + ")";
+    }
+    
+}
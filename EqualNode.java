@@ -0,0 +1,24 @@
+class EqualNode implements BooleanNode{
+    IntNode compare;
+    IntNode value;
+    
+    public EqualNode(IntNode compare, IntNode value){
+        this.compare = compare;
+        this.value = value;
+    }
+    
+    public boolean evaluate(Robot robot){
+        robot.countNode();
+        if (compare.evaluate(robot) == value.evaluate(robot)){
+            return true;
+        }
+        else{
+            return false;
+        }
+    }
+    
+    public String toString(){
+        return "eq(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
+    }
+    
+}
@@ -0,0 +1,15 @@
+class ExprNode implements IntNode{
+    int value;
+    
+    public ExprNode(int value){
+        this.value = value;
+    }
+    
+    public int evaluate(Robot robot){
+        return value;
+    }
+    
+    public String toString(){
+        return String.valueOf(value);
+    }
+}
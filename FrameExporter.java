@@ -0,0 +1,140 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a recorded match to a numbered sequence of PNG images, with the
+ * same drawing code as WorldComponent, on offscreen images so that it runs
+ * in a headless JVM. Each turn is rendered and encoded as one task on a
+ * fixed pool, so the frames are made on every core at once and as fast as
+ * they can be, not in real time.
+ *
+ * A match that was not recorded can be played from its seed, as a Match
+ * always plays the same way.
+ */
+public class FrameExporter {
+
+    private final Path directory;
+    private int framesPerTurn = 10;
+    private double scale = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Frames are written to the given directory, as frame-00000.png and on */
+    public FrameExporter(Path directory) {
+        this.directory = directory;
+    }
+
+    /** How many frames each turn is animated over; 10 by default */
+    public FrameExporter setFramesPerTurn(int framesPerTurn) {
+        this.framesPerTurn = framesPerTurn;
+        return this;
+    }
+
+    /** Size of the frames, as a multiple of the 600 pixel world */
+    public FrameExporter setScale(double scale) {
+        this.scale = scale;
+        return this;
+    }
+
+    public FrameExporter setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Render every turn of the replay, returning the number of frames
+     * written. A turn that was skipped over when the match was played is
+     * shown as the last turn recorded before it, standing still.
+     */
+    public int export(ReplayReader replay) throws IOException {
+        int first = replay.getFirstTurn();
+        int last = replay.getLastTurn();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int turn = first; turn <= last; turn++) {
+                int t = turn;
+                results.add(pool.submit(() -> {
+                    renderTurn(replay, t, (t - first) * framesPerTurn);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Rendering failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return (last - first + 1) * framesPerTurn;
+    }
+
+    /** The frames of one turn, drawn over a background made once for the turn */
+    private void renderTurn(ReplayReader replay, int turn, int number) throws IOException {
+        WorldSnapshot snapshot = replay.snapshot(turn);
+        int size = (int) Math.ceil(600 * scale);
+        BufferedImage background = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = background.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, size, size);
+        g2d.scale(scale, scale);
+        WorldComponent.drawGrid(g2d, snapshot);
+        g2d.dispose();
+
+        BufferedImage frame = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < framesPerTurn; i++) {
+            double time = (snapshot.turn == turn) ? (double) i / framesPerTurn : 1;
+            g2d = frame.createGraphics();
+            g2d.drawImage(background, 0, 0, null);
+            g2d.scale(scale, scale);
+            WorldComponent.drawRobots(g2d, snapshot, time);
+            g2d.dispose();
+            ImageIO.write(frame, "png", directory.resolve(String.format("frame-%05d.png", number + i)).toFile());
+        }
+    }
+
+    /**
+     * Usage: FrameExporter outputDirectory replayFile
+     *    or: FrameExporter outputDirectory bot1 bot2 seed
+     * where a bot is a program file or "default".
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: FrameExporter outputDirectory replayFile");
+            System.out.println("   or: FrameExporter outputDirectory bot1 bot2 seed");
+            return;
+        }
+        Path directory = Files.createDirectories(Paths.get(args[0]));
+        Path replayFile;
+        if (args.length == 2) {
+            replayFile = Paths.get(args[1]);
+        } else {
+            replayFile = Files.createTempFile("match", ".replay");
+            replayFile.toFile().deleteOnExit();
+            new Match(Match.loadProgram(args[1]), Match.loadProgram(args[2]), Long.parseLong(args[3]))
+                .setNames(args[1], args[2]).setReplay(replayFile).play();
+        }
+        long start = System.nanoTime();
+        int frames = new FrameExporter(directory).export(new ReplayReader(replayFile));
+        System.out.printf("%d frames in %.1f s%n", frames, (System.nanoTime() - start) / 1e9);
+    }
+}
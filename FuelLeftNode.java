@@ -0,0 +1,9 @@
+class FuelLeftNode implements IntNode{
+    
+    public int evaluate(Robot robot){robot.countNode(); return robot.getFuel();}
+    
+    public String toString(){
+        return "fuelleft";
+    }
+    
+}
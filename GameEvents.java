@@ -0,0 +1,197 @@
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for parsing, matches, turns and actions, so that a
+ * match can be laid out on a timeline in JDK Mission Control next to GC and
+ * JIT activity. Every event carries the id of its world, so the matches of
+ * a parallel run can be told apart.
+ *
+ * With no recording running the events are not committed and their fields
+ * are not filled in; the JIT removes what is left.
+ */
+public final class GameEvents {
+
+    private GameEvents() {
+    }
+
+    @Name("robots.Parse")
+    @Label("Parse Program")
+    @Category("Robots")
+    public static class Parse extends Event {
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("robots.MatchStart")
+    @Label("Match Start")
+    @Category("Robots")
+    public static class MatchStart extends Event {
+        @Label("World")
+        long world;
+
+        @Label("Seed")
+        long seed;
+
+        @Label("Headless")
+        boolean headless;
+    }
+
+    @Name("robots.MatchEnd")
+    @Label("Match End")
+    @Category("Robots")
+    @Description("The world was reset, after the match or part way through it")
+    public static class MatchEnd extends Event {
+        @Label("World")
+        long world;
+
+        @Label("Turns")
+        int turns;
+
+        @Label("Red Fuel")
+        int fuel1;
+
+        @Label("Blue Fuel")
+        int fuel2;
+    }
+
+    @Name("robots.TurnCommit")
+    @Label("Turn Commit")
+    @Category("Robots")
+    @Description("World.updateWorld committing a turn")
+    public static class TurnCommit extends Event {
+        @Label("World")
+        long world;
+
+        @Label("Turn")
+        int turn;
+
+        @Label("Barrels")
+        int barrels;
+    }
+
+    @Name("robots.Action")
+    @Label("Robot Action")
+    @Category("Robots")
+    @Description("A robot's action in a committed turn")
+    public static class Action extends Event {
+        @Label("World")
+        long world;
+
+        @Label("Turn")
+        int turn;
+
+        @Label("Robot")
+        String robot;
+
+        @Label("Action")
+        String action;
+
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Fuel")
+        int fuel;
+
+        @Label("Fuel Change")
+        int fuelDelta;
+
+        @Label("Shield")
+        boolean shield;
+    }
+
+    /** The number of nodes in a parsed program; only worked out for a recording */
+    static int countNodes(ProgramNode node) {
+        if (node == null)
+            return 0;
+        if (node instanceof ProgNode prog)
+            return 1 + countStatements(prog.programList);
+        if (node instanceof BlockNode block)
+            return 1 + countStatements(block.statementList);
+        if (node instanceof StatementNode s)
+            return 1 + countNodes(s.statement);
+        if (node instanceof ActionNode a)
+            return 1 + countNodes(a.action);
+        if (node instanceof LoopNode loop)
+            return 1 + countNodes(loop.block);
+        if (node instanceof WhileNode w)
+            return 1 + countCondition(w.condition) + countNodes(w.block);
+        if (node instanceof IfNode i)
+            return 1 + countCondition(i.condition) + countNodes(i.block) + countNodes(i.block2);
+        if (node instanceof IfElseIfNode i)
+            return 1 + countCondition(i.cond) + countNodes(i.blockT) + countBranches(i.listOfMaps);
+        if (node instanceof IfElseIfElseNode i)
+            return 1 + countCondition(i.cond) + countNodes(i.blockT) + countNodes(i.blockF) + countBranches(i.listOfMaps);
+        if (node instanceof AssgnNode a)
+            return 1 + countExpression(a.num);
+        if (node instanceof MoveVarNode m)
+            return 1 + countExpression(m.expr);
+        if (node instanceof WaitVarNode w)
+            return 1 + countExpression(w.expr);
+        return 1;   // one of the plain actions
+    }
+
+    private static int countStatements(List<ProgramNode> statements) {
+        int count = 0;
+        for (ProgramNode statement : statements)
+            count += countNodes(statement);
+        return count;
+    }
+
+    private static int countBranches(List<Map<BooleanNode, ProgramNode>> branches) {
+        int count = 0;
+        for (Map<BooleanNode, ProgramNode> branch : branches) {
+            for (Map.Entry<BooleanNode, ProgramNode> entry : branch.entrySet())
+                count += countCondition(entry.getKey()) + countNodes(entry.getValue());
+        }
+        return count;
+    }
+
+    private static int countCondition(BooleanNode node) {
+        if (node instanceof AndNode a)
+            return 1 + countCondition(a.cond1) + countCondition(a.cond2);
+        if (node instanceof OrNode o)
+            return 1 + countCondition(o.cond1) + countCondition(o.cond2);
+        if (node instanceof NotNode n)
+            return 1 + countCondition(n.cond1);
+        if (node instanceof GreaterNode g)
+            return 1 + countExpression(g.compare) + countExpression(g.value);
+        if (node instanceof LessNode l)
+            return 1 + countExpression(l.compare) + countExpression(l.value);
+        if (node instanceof EqualNode e)
+            return 1 + countExpression(e.compare) + countExpression(e.value);
+        return (node != null) ? 1 : 0;
+    }
+
+    private static int countExpression(IntNode node) {
+        if (node instanceof AddNode a)
+            return 1 + countExpression(a.expr1) + countExpression(a.expr2);
+        if (node instanceof SubNode s)
+            return 1 + countExpression(s.expr1) + countExpression(s.expr2);
+        if (node instanceof MulNode m)
+            return 1 + countExpression(m.expr1) + countExpression(m.expr2);
+        if (node instanceof DivNode d)
+            return 1 + countExpression(d.expr1) + countExpression(d.expr2);
+        if (node instanceof BarrelLrNode b)
+            return 1 + countExpression(b.num);
+        if (node instanceof BarrelFbNode b)
+            return 1 + countExpression(b.num);
+        if (node instanceof BarrelDistNode b)
+            return 1 + countExpression(b.num);
+        if (node instanceof BarrelActNode b)
+            return 1 + countExpression(b.num);
+        return (node != null) ? 1 : 0;
+    }
+}
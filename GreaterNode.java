@@ -0,0 +1,24 @@
+class GreaterNode implements BooleanNode{
+    IntNode compare;
+    IntNode value;
+    
+    public GreaterNode(IntNode compare, IntNode value){
+        this.compare = compare;
+        this.value = value;
+    }
+    
+    public boolean evaluate(Robot robot){
+        robot.countNode();
+        if (compare.evaluate(robot) > value.evaluate(robot)){
+            return true;
+        }
+        else{
+            return false;
+        }
+    }
+    
+    public String toString(){
+        return "gt(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
+    }
+
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Decides whether bot A beats bot B. Matches are played in parallel batches of
+ * seeds, and after each batch a sequential probability ratio test (SPRT) on
+ * the decisive games checks whether there is enough evidence to stop, so a
+ * clear mismatch is settled in a handful of games.
+ *
+ * Every seed is played twice with the bots swapping sides, as the red robot
+ * has its action resolved first.
+ */
+public class HeadToHead {
+
+    private static final double Z = 1.96;   // 95% intervals
+
+    private final ProgramNode botA, botB;
+    private double p0 = 0.45, p1 = 0.55;      // win rates of the two hypotheses
+    private double alpha = 0.05, beta = 0.05;  // error rates
+    private int maxMatches = 2000;
+    private long firstSeed = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path replayDirectory;
+    private String nameA = "A", nameB = "B";
+
+    public HeadToHead(ProgramNode botA, ProgramNode botB) {
+        this.botA = botA;
+        this.botB = botB;
+    }
+
+    /**
+     * Set the win rates of bot A under the hypotheses "A is worse" and "A is
+     * better"; the test stops when it can tell them apart.
+     */
+    public HeadToHead setHypotheses(double p0, double p1) {
+        this.p0 = p0;
+        this.p1 = p1;
+        return this;
+    }
+
+    /** The chances of wrongly accepting "A is better" and "A is worse" */
+    public HeadToHead setErrorRates(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+        return this;
+    }
+
+    public HeadToHead setMaxMatches(int maxMatches) {
+        this.maxMatches = maxMatches;
+        return this;
+    }
+
+    public HeadToHead setFirstSeed(long firstSeed) {
+        this.firstSeed = firstSeed;
+        return this;
+    }
+
+    public HeadToHead setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /** Names for the two bots, kept in the replays */
+    public HeadToHead setNames(String nameA, String nameB) {
+        this.nameA = nameA;
+        this.nameB = nameB;
+        return this;
+    }
+
+    /** Keep a replay of every match in the directory, as match-N.replay */
+    public HeadToHead setReplayDirectory(Path replayDirectory) {
+        this.replayDirectory = replayDirectory;
+        return this;
+    }
+
+    public Report run() {
+        double lower = Math.log(beta / (1 - alpha));
+        double upper = Math.log((1 - beta) / alpha);
+        double winStep = Math.log(p1 / p0);
+        double lossStep = Math.log((1 - p1) / (1 - p0));
+        int batch = 2 * threads;
+
+        Report report = new Report(maxMatches);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            while (report.played < maxMatches && report.verdict == 0) {
+                List<Future<Match.Result>> results = new ArrayList<>();
+                for (int i = 0; i < batch && report.played + i < maxMatches; i++) {
+                    results.add(pool.submit(matchTask(report.played + i)));
+                }
+                // results are folded in seed order, so a run does not depend on scheduling
+                for (int i = 0; i < results.size(); i++) {
+                    int winner = results.get(i).get().winner;
+                    boolean aIsRed = (report.played % 2) == 0;
+                    if (winner == 0) {
+                        report.draws++;
+                    } else if ((winner == 1) == aIsRed) {
+                        report.wins++;
+                        report.llr += winStep;
+                    } else {
+                        report.losses++;
+                        report.llr += lossStep;
+                    }
+                    report.played++;
+                }
+                if (report.llr >= upper)
+                    report.verdict = 1;
+                else if (report.llr <= lower)
+                    report.verdict = -1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Match failed", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    /** Match n plays seed n/2, with bot A as the red robot on even n */
+    private Callable<Match.Result> matchTask(int n) {
+        long seed = firstSeed + n / 2;
+        Path replay = (replayDirectory == null) ? null : replayDirectory.resolve("match-" + n + ".replay");
+        if (n % 2 == 0)
+            return () -> new Match(botA, botB, seed).setNames(nameA, nameB).setReplay(replay).play();
+        return () -> new Match(botB, botA, seed).setNames(nameB, nameA).setReplay(replay).play();
+    }
+
+    /** The tally of a head-to-head run */
+    public static class Report {
+        public int wins, losses, draws, played;
+        public double llr;
+        public int verdict;     // 1 if A is better, -1 if A is worse, 0 if undecided
+        private final int maxMatches;
+
+        Report(int maxMatches) {
+            this.maxMatches = maxMatches;
+        }
+
+        /** Score of bot A, counting a draw as half a win */
+        public double score() {
+            return played == 0 ? 0 : (wins + draws / 2d) / played;
+        }
+
+        /** Wilson interval for the score */
+        public double[] interval() {
+            if (played == 0)
+                return new double[] { 0, 1 };
+            double p = score();
+            double n = played;
+            double centre = (p + Z * Z / (2 * n)) / (1 + Z * Z / n);
+            double half = Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4 * n * n)) / (1 + Z * Z / n);
+            return new double[] { Math.max(0, centre - half), Math.min(1, centre + half) };
+        }
+
+        public int saved() {
+            return maxMatches - played;
+        }
+
+        public String toString() {
+            double[] ci = interval();
+            String result = (verdict > 0) ? "A is better" : (verdict < 0) ? "A is worse" : "undecided";
+            return String.format("%s after %d matches (+%d -%d =%d), score %.3f [%.3f, %.3f], llr %.2f, %d matches saved",
+                    result, played, wins, losses, draws, score(), ci[0], ci[1], llr, saved());
+        }
+    }
+
+    /**
+     * Usage: HeadToHead botA botB [maxMatches [replayDirectory]]
+     * where a bot is a program file or "default". Serves metrics while it
+     * runs if -Dmetrics.port is given (see Metrics).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: HeadToHead botA botB [maxMatches [replayDirectory]]");
+            return;
+        }
+        HeadToHead h2h = new HeadToHead(Match.loadProgram(args[0]), Match.loadProgram(args[1]))
+            .setNames(args[0], args[1]);
+        if (args.length > 2)
+            h2h.setMaxMatches(Integer.parseInt(args[2]));
+        if (args.length > 3)
+            h2h.setReplayDirectory(Files.createDirectories(Paths.get(args[3])));
+        HttpServer metrics = Metrics.serveIfAsked();
+        System.out.println(h2h.run());
+        System.out.println("Turn latency over all matches:");
+        TurnLatency.process().print(System.out);
+        if (metrics != null)
+            metrics.stop(0);
+    }
+}
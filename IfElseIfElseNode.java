@@ -0,0 +1,53 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class IfElseIfElseNode implements ProgramNode{
+    
+    BooleanNode cond;
+    ProgramNode blockT;
+    ProgramNode blockF;
+    
+    List<Map<BooleanNode, ProgramNode>> listOfMaps; // list of maps of BooleanNode -> ProgramNode
+    
+    public IfElseIfElseNode(BooleanNode cond, ProgramNode blockT, ProgramNode blockF, List<Map<BooleanNode, ProgramNode>> elseIfMapList){
+        this.cond = cond;
+        this.blockT = blockT;
+        this.blockF = blockF;
+        this.listOfMaps = elseIfMapList;
+    }
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        if (cond.evaluate(robot)){
+            blockT.execute(robot); // if first if block is true, execute it
+        }
+        else{
+            for (Map<BooleanNode, ProgramNode> mapping : listOfMaps){ // otherwise, for each map
+                for (BooleanNode condition : mapping.keySet()){ // get the boolean Node
+                    if (condition.evaluate(robot)){ // if true, execute it and return out
+                        mapping.get(condition).execute(robot);
+                        return; // return out after first is executed
+                    }
+                }
+            }
+            blockF.execute(robot); // if it gets through all without executing, execute the else statement
+        }
+    }
+    
+   
+    public String toString(){
+        String ans = "if (" + cond +")"+ blockT;
+        for (int i = 0; i < listOfMaps.size(); i++){
+            Map<BooleanNode, ProgramNode> map = listOfMaps.get(i);
+            Set<BooleanNode> set = map.keySet();
+            for (BooleanNode b : set){
+                ProgramNode blockToCopy = map.get(b);
+                ans = ans + " elif(" + b + ")" +  blockToCopy ;
+            }
+        }
+        ans = ans + " else " + blockF;
+        return ans;
+    }
+    
+}
@@ -0,0 +1,47 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class IfElseIfNode implements ProgramNode{
+    BooleanNode cond;
+    ProgramNode blockT;
+    List<Map<BooleanNode, ProgramNode>> listOfMaps; // list of maps containing boolean node linked to program node
+    
+    public IfElseIfNode(BooleanNode cond, ProgramNode blockT, List<Map<BooleanNode, ProgramNode>> listOfMaps){
+        this.cond = cond;
+        this.blockT = blockT;
+        this.listOfMaps = listOfMaps;
+    }
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        if (cond.evaluate(robot)){ // if condition true
+            blockT.execute(robot); // execute the true block (programNode) 
+        }
+        else{ // otherwise
+            for (Map<BooleanNode, ProgramNode> mapping : listOfMaps){ // for each entry in map of boolean node -> program node
+                for (BooleanNode condition : mapping.keySet()){
+                    if (condition.evaluate(robot)){ // if condition is true
+                        mapping.get(condition).execute(robot); // execute it
+                        return; // returns out after the first else if statement is executed 
+                    }
+                }
+            }
+        }
+    }
+    
+    public String toString(){
+        String ans = "if (" + cond.toString() + ")" + blockT.toString();
+        
+        for (int i = 0; i < listOfMaps.size(); i++){
+            Map<BooleanNode, ProgramNode> map = listOfMaps.get(i);
+            Set<BooleanNode> set = map.keySet();
+            
+            for (BooleanNode condition : set){
+                ProgramNode blockToCopy = map.get(condition);
+                ans = ans + "elif(" + condition + ")" + blockToCopy;
+            }
+        }
+        return ans;
+    }
+}
@@ -0,0 +1,32 @@
+class IfNode implements ProgramNode{
+    BooleanNode condition;
+    ProgramNode block;
+    ProgramNode block2;
+    
+    public IfNode(BooleanNode cond, ProgramNode block, ProgramNode block2){
+        condition = cond; this.block = block; this.block2 = block2;
+    }
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        if (condition.evaluate(robot)){
+            block.execute(robot);
+            
+        }
+        else{
+            if (block2 != null){
+                block2.execute(robot);
+            }
+        }
+    }
+    
+    public String toString(){
+        if (block2 == null){
+            return "if (" + condition.toString() + ")" + block.toString();
+        }
+        else{
+            return "if (" + condition.toString() + ")" + block.toString() + "else" + block2.toString();
+        }
+    }
+    
+}
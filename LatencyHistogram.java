@@ -0,0 +1,93 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of durations in nanoseconds, in log-linear buckets: exact below
+ * 128 ns, then 64 buckets for each power of two, so any value is known to
+ * within 1.6%. Recording is one atomic add and allocates nothing, so it can
+ * be done on every turn from any thread; histograms add together, so one
+ * per match can be merged into process-wide totals.
+ *
+ * Values over MAX (about 69 s) are counted as MAX.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;                  // 2^SUB_BITS exact values before the first doubling
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    public static final long MAX = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(0, Math.min(MAX, nanos))));
+    }
+
+    /** Add the counts of another histogram to this one */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0)
+                counts.addAndGet(i, count);
+        }
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * The value that the given percentage of recorded values are at or
+     * below, as the top of its bucket; 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return highest(i);
+        }
+        return MAX;
+    }
+
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0)
+                return highest(i);
+        }
+        return 0;
+    }
+
+    /** Count, percentiles and maximum, in microseconds */
+    public String toString() {
+        return String.format("count %8d  p50 %9.1f  p90 %9.1f  p99 %9.1f  p99.9 %9.1f  max %9.1f us",
+                getCount(), micros(getValueAtPercentile(50)), micros(getValueAtPercentile(90)),
+                micros(getValueAtPercentile(99)), micros(getValueAtPercentile(99.9)), micros(getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000d;
+    }
+
+    private static int index(long value) {
+        if (value < 2 * HALF)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF + (int) (value >> shift);
+    }
+
+    /** The largest value that falls in the bucket */
+    private static long highest(int index) {
+        if (index < 2 * HALF)
+            return index;
+        int shift = index / HALF - 1;
+        long top = index % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
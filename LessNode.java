@@ -0,0 +1,19 @@
+class LessNode implements BooleanNode{
+    IntNode compare;
+    IntNode value;
+    
+    public LessNode(IntNode compare, IntNode value){
+        this.compare = compare;
+        this.value = value;
+    }
+    
+    public boolean evaluate(Robot robot){
+        robot.countNode();
+        return (compare.evaluate(robot) < value.evaluate(robot));
+    }
+    
+    public String toString(){
+        return "lt(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
+    }
+    
+}
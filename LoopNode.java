@@ -0,0 +1,15 @@
+class LoopNode implements ProgramNode{
+    final ProgramNode block;
+    
+    public LoopNode(ProgramNode block){this.block = block;}
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        while (true){
+            block.execute(robot);
+        }
+    }
+    
+    public String toString() {return "loop " + this.block.toString();}
+
+}
@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+/**
+ * A single match between two robot programs, played without a window.
+ * A turn is committed as soon as both robots have chosen their action, so a
+ * match runs as fast as the programs can decide, and the same seed always
+ * plays out the same way.
+ */
+public class Match {
+
+    public static final int MAX_TURNS = 1000;
+
+    private final World world;
+    private final long seed;
+    private int turn;
+    private boolean fastForward = true;
+    private Path replayFile;
+    private String name1 = World.COLOURS[1], name2 = World.COLOURS[2];
+    private final ProgramNode[] programs;
+    private Profiler[] profilers;
+
+    /**
+     * A null program means the robot runs its default program.
+     */
+    public Match(ProgramNode prog1, ProgramNode prog2, long seed) {
+        this.seed = seed;
+        programs = new ProgramNode[] { null, prog1, prog2 };
+        world = new World(seed, true);
+        world.getRobot(1).setProgram(prog1);
+        world.getRobot(2).setProgram(prog2);
+    }
+
+    /**
+     * Whether to profile both programs (see Profiler). Profiling turns off
+     * fast-forward, so that every turn is really played and counted.
+     */
+    public Match setProfiling(boolean profiling) {
+        profilers = profiling ? new Profiler[3] : null;
+        for (int id = 1; id <= 2; id++) {
+            ProgramNode program = programs[id];
+            if (profiling) {
+                profilers[id] = new Profiler(program);
+                program = profilers[id].getProgram();
+            }
+            world.getRobot(id).setProgram(program);
+        }
+        return this;
+    }
+
+    /** The profile of robot 1 or 2, once the match is played; null if not profiling */
+    public Profiler getProfiler(int id) {
+        return (profilers == null) ? null : profilers[id];
+    }
+
+    /**
+     * Whether to skip over stretches of play that are known to repeat (see
+     * CycleDetector). It does not change the result; on by default.
+     */
+    public Match setFastForward(boolean fastForward) {
+        this.fastForward = fastForward;
+        return this;
+    }
+
+    /** Record every turn of the match into the given replay file (see ReplayWriter) */
+    public Match setReplay(Path replayFile) {
+        this.replayFile = replayFile;
+        return this;
+    }
+
+    /** Names for the two programs, kept in the replay */
+    public Match setNames(String name1, String name2) {
+        this.name1 = name1;
+        this.name2 = name2;
+        return this;
+    }
+
+    /**
+     * Play the match to the end. The world can not be used afterwards.
+     */
+    public Result play() {
+        if (replayFile == null)
+            return play(null);
+        try (ReplayWriter replay = new ReplayWriter(replayFile, seed, name1, name2)) {
+            Result result = play(replay);
+            replay.end(result);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Result play(ReplayWriter replay) {
+        CycleDetector cycles = (fastForward && profilers == null) ? new CycleDetector(world, MAX_TURNS) : null;
+        world.getRobot(1).setBot(name1);
+        world.getRobot(2).setBot(name2);
+        world.start();
+        if (replay != null)
+            replay.keyframe(0, world.getSnapshot());
+        try {
+            while (turn < MAX_TURNS) {
+                if (!world.getRobot(1).awaitAction() || !world.getRobot(2).awaitAction()) {
+                    // interrupted: whoever asked for this match no longer wants its result
+                    return new Result(0, turn);
+                }
+                boolean forfeit1 = world.getRobot(1).hasForfeited();
+                boolean forfeit2 = world.getRobot(2).hasForfeited();
+                if (forfeit1 || forfeit2) {
+                    // a robot that evaluates too much without acting forfeits
+                    return new Result((forfeit1 && forfeit2) ? 0 : forfeit1 ? 2 : 1, turn);
+                }
+                if (cycles != null) {
+                    int skipped = cycles.fastForward(turn);
+                    if (skipped > 0) {
+                        world.getRobot(1).getMetrics().survived(skipped);
+                        world.getRobot(2).getMetrics().survived(skipped);
+                    }
+                    turn += skipped;
+                    if (cycles.outcome() != null)
+                        return cycles.outcome();
+                }
+                world.updateWorld();
+                turn++;
+                if (replay != null)
+                    replay.turn(turn, world.getSnapshot());
+                boolean dead1 = world.getRobot(1).isOutOfFuel();
+                boolean dead2 = world.getRobot(2).isOutOfFuel();
+                if (dead1 || dead2) {
+                    return new Result((dead1 && dead2) ? 0 : dead1 ? 2 : 1, turn);
+                }
+            }
+            return new Result(0, turn);
+        } finally {
+            world.getRobot(1).getMetrics().matchPlayed();
+            world.getRobot(2).getMetrics().matchPlayed();
+            TurnLatency.process().add(world.getLatency());
+            world.reset();
+            world.awaitRobots();
+        }
+    }
+
+    /** How long the stages of this match's turns took */
+    public TurnLatency getLatency() {
+        return world.getLatency();
+    }
+
+    /** What robot 1 or 2 did in this match (see Metrics) */
+    public Metrics getMetrics(int id) {
+        return world.getRobot(id).getMetrics();
+    }
+
+    /**
+     * Parse a robot program; "default" (or null) gives the built in program.
+     * A program that can never act (see CostAnalysis.isStuck) is refused with
+     * a ParserFailureException, as there is no point in playing it.
+     */
+    public static ProgramNode loadProgram(String path) throws FileNotFoundException {
+        if (path == null || path.equals("default"))
+            return null;
+        ProgramNode program = new Parser().parse(new Scanner(new File(path)));
+        CostAnalysis cost = new CostAnalysis(program);
+        if (cost.isStuck())
+            throw new ParserFailureException(path + ": " + cost);
+        return program;
+    }
+
+    /** The outcome of a match */
+    public static class Result {
+        public final int winner;    // 1 or 2, or 0 for a draw
+        public final int turns;
+
+        public Result(int winner, int turns) {
+            this.winner = winner;
+            this.turns = turns;
+        }
+
+        public String toString() {
+            return ((winner == 0) ? "draw" : "robot " + winner + " won") + " after " + turns + " turns";
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Scanner;
+
+/**
+ * Plays a fixed, seeded set of headless matches and reports how fast they
+ * went: matches and turns a second, bytes allocated a turn, and the median
+ * and 99th percentile time of a turn. The set is the built in program
+ * against fullprogram.prog, and generated programs of 10, 100 and 1000
+ * statements (see Bench.matchProgram) against it, each on both sides.
+ *
+ * The results are compared with a baseline file, and a metric more than the
+ * threshold worse than its baseline fails the run, so it can gate a change.
+ * Matches are played one at a time with fast-forward off, so every turn is
+ * really played and timed.
+ */
+public class MatchBench {
+
+    public static final String MATCHES = "matchesPerSecond", TURNS = "turnsPerSecond",
+        BYTES = "bytesPerTurn", P50 = "p50TurnMicros", P99 = "p99TurnMicros";
+    private static final List<String> HIGHER_IS_BETTER = Arrays.asList(MATCHES, TURNS);
+
+    private final List<ProgramNode[]> pairings = new ArrayList<>();
+    private int seeds = 10;
+    private int warmups = 1;
+    private int rounds = 5;
+
+    /** Add a pairing, played on every seed with each program on each side */
+    public MatchBench add(ProgramNode prog1, ProgramNode prog2) {
+        pairings.add(new ProgramNode[] { prog1, prog2 });
+        return this;
+    }
+
+    public MatchBench setSeeds(int seeds) {
+        this.seeds = seeds;
+        return this;
+    }
+
+    public MatchBench setWarmups(int warmups) {
+        this.warmups = warmups;
+        return this;
+    }
+
+    public MatchBench setRounds(int rounds) {
+        this.rounds = rounds;
+        return this;
+    }
+
+    /**
+     * Play the set of matches warmups + rounds times; each metric is the
+     * median over the measured rounds, apart from the turn times, which are
+     * percentiles over all their turns.
+     */
+    public Map<String, Double> run() {
+        for (int i = 0; i < warmups; i++)
+            round(new TurnLatency());
+        TurnLatency latency = new TurnLatency();
+        double[] matches = new double[rounds], turns = new double[rounds], bytes = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long robotBytes = World.getRobotAllocations();
+            long driverBytes = World.allocatedBytes();
+            long start = System.nanoTime();
+            long[] played = round(latency);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = (World.getRobotAllocations() - robotBytes) + (World.allocatedBytes() - driverBytes);
+            matches[i] = played[0] / seconds;
+            turns[i] = played[1] / seconds;
+            bytes[i] = (double) allocated / played[1];
+        }
+        Map<String, Double> results = new LinkedHashMap<>();
+        results.put(MATCHES, median(matches));
+        results.put(TURNS, median(turns));
+        results.put(BYTES, median(bytes));
+        results.put(P50, latency.turn.getValueAtPercentile(50) / 1000d);
+        results.put(P99, latency.turn.getValueAtPercentile(99) / 1000d);
+        return results;
+    }
+
+    /** Play every match once; returns the number of matches and of turns */
+    private long[] round(TurnLatency latency) {
+        long[] played = new long[2];
+        for (ProgramNode[] pairing : pairings) {
+            for (long seed = 1; seed <= seeds; seed++) {
+                for (int side = 0; side < 2; side++) {
+                    Match match = new Match(pairing[side], pairing[1 - side], seed).setFastForward(false);
+                    played[1] += match.play().turns;
+                    played[0]++;
+                    latency.add(match.getLatency());
+                }
+            }
+        }
+        return played;
+    }
+
+    /**
+     * The metrics that are worse than their baseline by more than the
+     * threshold (0.1 for 10%), each with a line saying by how much.
+     */
+    public static List<String> regressions(Map<String, Double> results, Properties baseline, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            String base = baseline.getProperty(result.getKey());
+            if (base == null)
+                continue;
+            double expected = Double.parseDouble(base);
+            double change = (result.getValue() - expected) / expected;
+            double worse = HIGHER_IS_BETTER.contains(result.getKey()) ? -change : change;
+            if (worse > threshold)
+                regressions.add(String.format("%s %.1f against %.1f, %.1f%% worse",
+                                              result.getKey(), result.getValue(), expected, 100 * worse));
+        }
+        return regressions;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return (n % 2 == 1) ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    /**
+     * Usage: MatchBench baselineFile [threshold | save]
+     * Run from the directory holding fullprogram.prog. Compares the results
+     * with the baseline (10% threshold by default) and exits with status 1 if
+     * any metric regressed. With "save", or if there is no baseline yet, the
+     * results are written to the baseline file instead.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: MatchBench baselineFile [threshold | save]");
+            return;
+        }
+        Path baselineFile = Paths.get(args[0]);
+        boolean save = args.length > 1 && args[1].equals("save");
+        double threshold = (args.length > 1 && !save) ? Double.parseDouble(args[1]) : 0.1;
+
+        ProgramNode full = Match.loadProgram("fullprogram.prog");
+        MatchBench bench = new MatchBench().add(null, full);
+        for (int size : new int[] { 10, 100, 1000 })
+            bench.add(new Parser().parse(new Scanner(Bench.matchProgram(size))), full);
+        Map<String, Double> results = bench.run();
+        for (Map.Entry<String, Double> result : results.entrySet())
+            System.out.printf("%-18s %12.1f%n", result.getKey(), result.getValue());
+
+        Properties baseline = new Properties();
+        if (save || !Files.exists(baselineFile)) {
+            for (Map.Entry<String, Double> result : results.entrySet())
+                baseline.setProperty(result.getKey(), String.valueOf(result.getValue()));
+            try (OutputStream out = Files.newOutputStream(baselineFile)) {
+                baseline.store(out, "MatchBench baseline");
+            }
+            System.out.println("Baseline written to " + baselineFile);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        List<String> regressions = regressions(results, baseline, threshold);
+        if (regressions.isEmpty()) {
+            System.out.printf("No regression beyond %.0f%% of %s%n", 100 * threshold, baselineFile);
+            return;
+        }
+        for (String regression : regressions)
+            System.out.println("REGRESSION " + regression);
+        System.exit(1);
+    }
+}
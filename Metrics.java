@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Counters for what a robot did: program nodes evaluated, sensor calls and
+ * actions by type, fuel collected and siphoned, and turns survived.
+ *
+ * Each robot counts into its own Metrics for the match it is in, which adds
+ * everything on to the totals of its bot (see forBot) as it goes. The totals
+ * are kept per bot name across the whole process, and can be read as MBeans
+ * or from a plain text OpenMetrics page on localhost (see serve). While a
+ * match is played its own counters are on the page too, tagged with the id
+ * of its world and the robot's colour (see playing); they are not MBeans, as
+ * registering one per match would cost more than a short match.
+ *
+ * The counters are LongAdders, so matches played in parallel by the same bot
+ * do not contend. The robot thread counts nodes and sensor calls in plain
+ * fields and adds them here once a turn (see add).
+ */
+public class Metrics implements MetricsMXBean {
+
+    public static final String[] SENSORS = {
+        "fuel", "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB", "wallDist", "shieldOn",
+        "barrelDist", "barrelAct" };
+    public static final int
+        FUEL = 0, OPPONENT_LR = 1, OPPONENT_FB = 2, NUM_BARRELS = 3, BARREL_LR = 4, BARREL_FB = 5,
+        WALL_DISTANCE = 6, SHIELD_ON = 7, BARREL_DISTANCE = 8, BARREL_ACTION = 9;
+    // by Robot.ACTION_ constant
+    public static final String[] ACTIONS = { null, "move", "turnL", "turnR", "turnAround", "takeFuel", "wait" };
+
+    private static final Map<String, Metrics> bots = new ConcurrentHashMap<>();
+    // the counters of each robot in a match being played, by world id and robot colour
+    private static final Map<String, Metrics> playing = new ConcurrentHashMap<>();
+
+    private final Metrics totals;   // of the bot, or null if these are the totals
+    private final String bot;       // the name of the bot, for totals
+    private volatile String world, robot;   // while being played, for the counters of a match
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder[] sensors = adders(SENSORS.length);
+    private final LongAdder[] actions = adders(ACTIONS.length);
+    private final LongAdder fuelCollected = new LongAdder();
+    private final LongAdder fuelSiphoned = new LongAdder();
+    private final LongAdder turnsSurvived = new LongAdder();
+    private final LongAdder programFailures = new LongAdder();
+
+    /** Counters for one match, adding on to the given totals (or null) */
+    public Metrics(Metrics totals) {
+        this(totals, null);
+    }
+
+    private Metrics(Metrics totals, String bot) {
+        this.totals = totals;
+        this.bot = bot;
+    }
+
+    /**
+     * The totals of the named bot, made and registered as an MBean the
+     * first time the name is used.
+     */
+    public static Metrics forBot(String name) {
+        return bots.computeIfAbsent(name, k -> {
+            Metrics metrics = new Metrics(null, name);
+            try {
+                ObjectName objectName = new ObjectName("robots:type=Bot,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            } catch (JMException e) {
+                System.err.println("Metrics for " + name + " not registered: " + e);
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * Show these counters of a match on the OpenMetrics page, tagged with the
+     * world's id and the robot's colour, until played is called. Only the
+     * counters of a robot counted for a bot are shown.
+     */
+    void playing(long world, String robot) {
+        if (totals == null || this.world != null)
+            return;
+        this.world = String.valueOf(world);
+        this.robot = robot;
+        playing.put(key(), this);
+    }
+
+    /** The match is over: stop showing its counters */
+    void played() {
+        if (world == null)
+            return;
+        playing.remove(key());
+        world = null;
+    }
+
+    private String key() {
+        return world + "/" + robot;
+    }
+
+    /** Counts from the robot thread: nodes evaluated and calls to each sensor */
+    void add(long nodeCount, int[] sensorCalls) {
+        nodes.add(nodeCount);
+        for (int i = 0; i < sensorCalls.length; i++) {
+            if (sensorCalls[i] != 0)
+                sensors[i].add(sensorCalls[i]);
+        }
+        if (totals != null)
+            totals.add(nodeCount, sensorCalls);
+    }
+
+    /** A turn committed with the given action, by a robot still running or not */
+    void turn(int action, boolean alive) {
+        if (action > 0)
+            actions[action].increment();
+        if (alive)
+            turnsSurvived.increment();
+        if (totals != null)
+            totals.turn(action, alive);
+    }
+
+    /** Turns skipped by a match's fast-forward, which the robot survived */
+    void survived(int turns) {
+        turnsSurvived.add(turns);
+        if (totals != null)
+            totals.survived(turns);
+    }
+
+    void fuel(int collected, int siphoned) {
+        fuelCollected.add(collected);
+        fuelSiphoned.add(siphoned);
+        if (totals != null)
+            totals.fuel(collected, siphoned);
+    }
+
+    void programFailed() {
+        programFailures.increment();
+        if (totals != null)
+            totals.programFailed();
+    }
+
+    void matchPlayed() {
+        matches.increment();
+        if (totals != null)
+            totals.matchPlayed();
+    }
+
+    @Override
+    public long getMatches() {
+        return matches.sum();
+    }
+
+    @Override
+    public long getNodesEvaluated() {
+        return nodes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSensorCalls() {
+        return sums(SENSORS, sensors);
+    }
+
+    @Override
+    public Map<String, Long> getActions() {
+        return sums(ACTIONS, actions);
+    }
+
+    @Override
+    public long getFuelCollected() {
+        return fuelCollected.sum();
+    }
+
+    @Override
+    public long getFuelSiphoned() {
+        return fuelSiphoned.sum();
+    }
+
+    @Override
+    public long getTurnsSurvived() {
+        return turnsSurvived.sum();
+    }
+
+    @Override
+    public long getProgramFailures() {
+        return programFailures.sum();
+    }
+
+    /**
+     * The totals of every bot, and the counters of the matches being played,
+     * in the OpenMetrics text format. The families of the matches are named
+     * robot_match_, apart from the totals, so that summing a family never
+     * counts a turn twice.
+     */
+    public static String openMetrics() {
+        Map<String, Metrics> totals = new TreeMap<>();
+        for (Metrics metrics : bots.values())
+            totals.put("bot=\"" + escape(metrics.bot) + '"', metrics);
+        Map<String, Metrics> matches = new TreeMap<>();
+        for (Metrics metrics : playing.values()) {
+            String world = metrics.world, robot = metrics.robot;
+            if (world != null)      // not over since it was listed
+                matches.put("bot=\"" + escape(metrics.totals.bot) + "\",world=\"" + world + "\",robot=\"" + robot + '"',
+                            metrics);
+        }
+        StringBuilder page = new StringBuilder();
+        families(page, "robot", totals, true);
+        families(page, "robot_match", matches, false);
+        page.append("# EOF\n");
+        return page.toString();
+    }
+
+    /** Every counter, one family each, for each of the series; matches played only for totals */
+    private static void families(StringBuilder page, String prefix, Map<String, Metrics> series, boolean totals) {
+        if (totals) {
+            header(page, prefix + "_matches", "Matches played");
+            family(page, prefix + "_matches", series, null, m -> m.getMatches());
+        }
+        header(page, prefix + "_nodes_evaluated", "Program nodes evaluated");
+        family(page, prefix + "_nodes_evaluated", series, null, m -> m.getNodesEvaluated());
+        header(page, prefix + "_sensor_calls", "Calls to each sensor");
+        for (int i = 0; i < SENSORS.length; i++) {
+            int sensor = i;
+            family(page, prefix + "_sensor_calls", series, "sensor=\"" + SENSORS[i] + "\"", m -> m.sensors[sensor].sum());
+        }
+        header(page, prefix + "_actions", "Turns spent on each action");
+        for (int i = 1; i < ACTIONS.length; i++) {
+            int action = i;
+            family(page, prefix + "_actions", series, "action=\"" + ACTIONS[i] + "\"", m -> m.actions[action].sum());
+        }
+        header(page, prefix + "_fuel_collected", "Fuel gained from barrels and by siphoning");
+        family(page, prefix + "_fuel_collected", series, null, m -> m.getFuelCollected());
+        header(page, prefix + "_fuel_siphoned", "Fuel siphoned from the other robot");
+        family(page, prefix + "_fuel_siphoned", series, null, m -> m.getFuelSiphoned());
+        header(page, prefix + "_turns_survived", "Turns played with fuel left");
+        family(page, prefix + "_turns_survived", series, null, m -> m.getTurnsSurvived());
+        header(page, prefix + "_program_failures", "Programs that ended by throwing in a headless match");
+        family(page, prefix + "_program_failures", series, null, m -> m.getProgramFailures());
+    }
+
+    /**
+     * Serve openMetrics() at http://localhost:port/metrics until the server
+     * is stopped. Only the loopback address is bound.
+     */
+    public static HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = openMetrics().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                                              "application/openmetrics-text; version=1.0.0; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Serve the metrics on the port given by the metrics.port system
+     * property, if it is set. Returns the server, or null.
+     */
+    public static HttpServer serveIfAsked() throws IOException {
+        Integer port = Integer.getInteger("metrics.port");
+        if (port == null)
+            return null;
+        HttpServer server = serve(port);
+        System.out.println("Metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+
+    private interface Counter {
+        long get(Metrics metrics);
+    }
+
+    private static void header(StringBuilder page, String name, String help) {
+        page.append("# TYPE ").append(name).append(" counter\n");
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    /** One counter of every series, keyed by its labels, with an extra label if not null */
+    private static void family(StringBuilder page, String name, Map<String, Metrics> series, String label,
+                               Counter counter) {
+        for (Map.Entry<String, Metrics> metrics : series.entrySet()) {
+            page.append(name).append("_total{").append(metrics.getKey());
+            if (label != null)
+                page.append(',').append(label);
+            page.append("} ").append(counter.get(metrics.getValue())).append('\n');
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static Map<String, Long> sums(String[] names, LongAdder[] adders) {
+        Map<String, Long> sums = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null)
+                sums.put(names[i], adders[i].sum());
+        }
+        return sums;
+    }
+}
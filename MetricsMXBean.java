@@ -0,0 +1,27 @@
+import java.util.Map;
+
+/**
+ * The counters of one bot, summed over every match it has played in this
+ * process, as seen through JMX (see Metrics).
+ */
+public interface MetricsMXBean {
+
+    public long getMatches();
+
+    public long getNodesEvaluated();
+
+    /** Calls to each sensor, by name */
+    public Map<String, Long> getSensorCalls();
+
+    /** Turns spent on each action, by name */
+    public Map<String, Long> getActions();
+
+    public long getFuelCollected();
+
+    public long getFuelSiphoned();
+
+    public long getTurnsSurvived();
+
+    /** Programs that ended by throwing, in headless matches */
+    public long getProgramFailures();
+}
@@ -0,0 +1,8 @@
+class MoveNode implements ProgramNode{
+    final String action = "move;";
+    
+    public String toString(){return action;}
+    
+    public void execute(Robot robot) {robot.countNode(); robot.setSite(this); robot.move();}
+    
+}
@@ -0,0 +1,20 @@
+class MoveVarNode implements ProgramNode{
+     IntNode expr;
+     
+     public MoveVarNode(IntNode expr){
+         this.expr = expr;
+     }
+     
+     public void execute(Robot robot){
+         robot.countNode();
+         
+         int numTimes = expr.evaluate(robot);
+         robot.setSite(this);
+         robot.move(numTimes);
+         
+     }
+     
+     public String toString(){
+         return "move(" + expr.toString() + ");";
+     }
+}
@@ -0,0 +1,23 @@
+class MulNode implements IntNode{
+    final String operator = "*";
+    
+    IntNode expr1;
+    
+    IntNode expr2;
+    
+    public MulNode(IntNode expr1, IntNode expr2){
+        this.expr1 = expr1;
+        this.expr2 = expr2;
+    }
+    
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        return expr1.evaluate(robot) * expr2.evaluate(robot);
+    }
+    
+    public String toString(){
+        return "mul(" + expr1.toString() + "," + expr2.toString() + ")";
+    }
+    
+}
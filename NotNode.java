@@ -0,0 +1,17 @@
+class NotNode implements BooleanNode{
+    BooleanNode cond1;
+    
+    public NotNode(BooleanNode cond1){
+        this.cond1 = cond1;
+    }
+    
+    public boolean evaluate(Robot robot){
+        robot.countNode();
+        return !cond1.evaluate(robot);
+    }
+    
+    public String toString(){
+        return "not(" + cond1.toString() + ")";
+    }
+    
+}
@@ -0,0 +1,7 @@
+class NumBarrelsNode implements IntNode{
+    public int evaluate(Robot robot){robot.countNode(); return robot.numBarrels();}
+    
+    public String toString(){
+        return "numBarrels";
+    }
+}
@@ -0,0 +1,18 @@
+class NumNode implements IntNode{
+    private int value;
+    
+    public NumNode(int value){
+        this.value = value;
+    }
+    
+    public int value(){
+        return this.value();
+    }
+    
+    public int evaluate(Robot robot){return this.value;}     // not counted; may be called without a robot
+    
+    public String toString(){
+        return String.valueOf(value);
+    }
+    
+}
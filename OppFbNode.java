@@ -0,0 +1,7 @@
+class OppFbNode implements IntNode{
+    public int evaluate(Robot robot){robot.countNode(); return robot.getOpponentFB();}
+    
+    public String toString(){
+        return "oppFb";
+    }
+}
@@ -0,0 +1,7 @@
+class OppLrNode implements IntNode{
+    public int evaluate(Robot robot){robot.countNode(); return robot.getOpponentLR();}
+    
+    public String toString(){
+        return "oppLr";
+    }
+}
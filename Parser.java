@@ -12,7 +12,7 @@ public class Parser {
     static final Pattern IF_PAT = Pattern.compile("if");
     static final Pattern WHILE_PAT = Pattern.compile("while");
     static final Pattern ACT_PAT = Pattern.compile("move|turnL|turnR|takeFuel|wait|shieldOn|shieldOff|turnAround");
-    static final Pattern SENS_PAT = Pattern.compile("fuelLeft|oppLR|oppFB|numBarrels|barrelLR|barrelFB|wallDist");
+    static final Pattern SENS_PAT = Pattern.compile("fuelLeft|oppLR|oppFB|numBarrels|barrelLR|barrelFB|barrelDist|barrelAct|wallDist");
     static final Pattern OP_PAT = Pattern.compile("add|sub|mul|div");
     static final Pattern COND_PAT = Pattern.compile("and|or|not");
     static final Pattern VAR_PAT = Pattern.compile("\\$[A-Za-z][A-Za-z0-9]*");
@@ -24,11 +24,23 @@ public class Parser {
      * Returns the parse tree.
      */
     ProgramNode parse(Scanner s) {
-        // Set the delimiter for the scanner.
-        s.useDelimiter("\\s+|(?=[{}(),;])|(?<=[{}(),;])");
-        // Call the parseProg method for the first grammar rule (PROG) and return the node
-        ProgramNode p = parseProgNode(s);
-        return p;
+        GameEvents.Parse event = new GameEvents.Parse();
+        event.begin();
+        ProgramNode p = null;
+        try {
+            // Set the delimiter for the scanner.
+            s.useDelimiter("\\s+|(?=[{}(),;])|(?<=[{}(),;])");
+            // Call the parseProg method for the first grammar rule (PROG) and return the node
+            p = parseProgNode(s);
+            return p;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.failed = (p == null);
+                event.nodes = GameEvents.countNodes(p);
+                event.commit();
+            }
+        }
     }
 
     /** Parses program nodes
@@ -274,7 +286,8 @@ public class Parser {
 
     /** Parses SENS command 
      * "fuelLeft" | "oppLR" | "oppFB" | "numBarrels" |
-          "barrelLR" [ "(" EXPR ")" ] | "barrelFB" [ "(" EXPR ")" ] | "wallDist"
+          "barrelLR" [ "(" EXPR ")" ] | "barrelFB" [ "(" EXPR ")" ] |
+          "barrelDist" [ "(" EXPR ")" ] | "barrelAct" [ "(" EXPR ")" ] | "wallDist"
      */
     IntNode parseSens(Scanner s){
         if (s.hasNext("fuelLeft")){return parseFuelLeft(s);}
@@ -283,6 +296,8 @@ public class Parser {
         if (s.hasNext("numBarrels")){return parseNumBarrels(s);}
         if (s.hasNext("barrelLR")){return parseBarrelLr(s);}
         if (s.hasNext("barrelFB")){return parseBarrelFb(s);}
+        if (s.hasNext("barrelDist")){return parseBarrelDist(s);}
+        if (s.hasNext("barrelAct")){return parseBarrelAct(s);}
         if (s.hasNext("wallDist")){return parseWallDist(s);}
         
         fail("Unknown instruction", s);
@@ -332,8 +347,12 @@ public class Parser {
             while (s.hasNext(NUMPAT)){
                 number += s.next();
         }
-        int num = Integer.parseInt(number);
-        return new NumNode(num);
+        try {
+            return new NumNode(Integer.parseInt(number));
+        } catch (NumberFormatException e) {
+            // numbers run together ("1 -2"), or out of range
+            fail("Invalid number " + number, s);
+        }
         }
         fail("Expecting a number", s); 
         
@@ -388,6 +407,30 @@ public class Parser {
         return new BarrelFbNode(null);
     }
     
+    /** Parses barrelDist */
+    IntNode parseBarrelDist(Scanner s){
+        require("barrelDist", "Expecting 'barrelDist'", s);
+        if (s.hasNext(OPENPAREN)){
+            s.next();
+            IntNode num = parseExpr(s);
+            require(CLOSEPAREN, "Expecting ')'", s);
+            return new BarrelDistNode(num);
+        }
+        return new BarrelDistNode(null);
+    }
+    
+    /** Parses barrelAct */
+    IntNode parseBarrelAct(Scanner s){
+        require("barrelAct", "Expecting 'barrelAct'", s);
+        if (s.hasNext(OPENPAREN)){
+            s.next();
+            IntNode num = parseExpr(s);
+            require(CLOSEPAREN, "Expecting ')'", s);
+            return new BarrelActNode(num);
+        }
+        return new BarrelActNode(null);
+    }
+    
     /** Parses wallDist */
     IntNode parseWallDist(Scanner s){
         require("wallDist", "Expecting 'wallDist'", s);
@@ -570,706 +613,3 @@ public class Parser {
     }
 
 }
-
-class BlockNode implements ProgramNode{
-    final List<ProgramNode> statementList;
-    
-    public BlockNode(List<ProgramNode> statementList){this.statementList = statementList;}
-    
-    public void execute(Robot robot){
-        for (ProgramNode p : statementList){
-            p.execute(robot);
-        }
-    }
-    
-    public String toString(){
-        String ans = "{";
-        for (ProgramNode n : statementList){
-            ans += n.toString();
-        }
-        return ans + "}";
-    }
-}
-
-class StatementNode implements ProgramNode{
-    final ProgramNode statement;
-    
-    public StatementNode(ProgramNode p){this.statement = p;}
-   
-    public void execute(Robot robot){
-        statement.execute(robot);
-    }
-    
-    public String toString(){
-        return statement.toString();
-    }
-    
-}
-
-class ActionNode implements ProgramNode{
-    final ProgramNode action;
-    
-    public ActionNode(ProgramNode action){this.action = action;}
-
-    public void execute(Robot robot){
-        action.execute(robot);
-    }
-    
-    public String toString(){return action.toString() + ";";}
-    
-}
-
-class ProgNode implements ProgramNode{
-    final List<ProgramNode> programList;
-    
-    public ProgNode(List<ProgramNode> p){this.programList = p;}
-    
-    public void execute(Robot robot){for (ProgramNode p : programList){p.execute(robot);}}
-    
-    public String toString(){
-        String ans = "";
-        for (ProgramNode n : programList){
-            ans += n.toString() + " ";
-        }
-        return ans;
-    }
-    
-}
-
-class LoopNode implements ProgramNode{
-    final ProgramNode block;
-    
-    public LoopNode(ProgramNode block){this.block = block;}
-    
-    public void execute(Robot robot){
-        while (true){
-            block.execute(robot);
-        }
-    }
-    
-    public String toString() {return "loop " + this.block.toString();}
-
-}
-
-// Node classes for each of the action nodes (move, turnR, turnL, ...)
-class MoveNode implements ProgramNode{
-    final String action = "move;";
-    
-    public String toString(){return action;}
-    
-    public void execute(Robot robot) {robot.move();}
-    
-}
-
-class TurnRNode implements ProgramNode{
-    final String action = "turnR;";
-    
-    public String toString(){return action;}
-    
-    public void execute(Robot robot) {robot.turnRight();}
-    
-}
-
-class TurnLNode implements ProgramNode{
-    final String action = "turnL;";
-    
-    public String toString(){return action;}
-    
-    public void execute(Robot robot) {robot.turnLeft();}
-
-}
-
-class TakeFuelNode implements ProgramNode{
-    final String action = "takeFuel;";
-    
-    public String toString(){return action;}
-    
-    public void execute(Robot robot) {robot.takeFuel();}
-}
-
-class WaitNode implements ProgramNode{
-    final String action = "wait;";
-    
-    public String toString(){return action;}
-    
-    public void execute(Robot robot) {robot.idleWait();}
-}
-
-class ShieldOnNode implements ProgramNode{
-    final String action = "shieldOn;";
-    public String toString(){return action;}
-    public void execute(Robot robot){robot.setShield(true);}
-}
-
-class ShieldOffNode implements ProgramNode{
-    final String action = "shieldOff;";
-    public String toString(){return action;}
-    public void execute(Robot robot){robot.setShield(false);}
-}
-
-class TurnAroundNode implements ProgramNode{
-    final String action = "turnAround;";
-    public String toString(){return action;}
-    public void execute(Robot robot){robot.turnAround();}
-}
-
-class NumNode implements IntNode{
-    private int value;
-    
-    public NumNode(int value){
-        this.value = value;
-    }
-    
-    public int value(){
-        return this.value();
-    }
-    
-    public int evaluate(Robot robot){return this.value;}
-    
-    public String toString(){
-        return String.valueOf(value);
-    }
-    
-}
-
-class IfNode implements ProgramNode{
-    BooleanNode condition;
-    ProgramNode block;
-    ProgramNode block2;
-    
-    public IfNode(BooleanNode cond, ProgramNode block, ProgramNode block2){
-        condition = cond; this.block = block; this.block2 = block2;
-    }
-    
-    public void execute(Robot robot){
-        if (condition.evaluate(robot)){
-            block.execute(robot);
-            
-        }
-        else{
-            if (block2 != null){
-                block2.execute(robot);
-            }
-        }
-    }
-    
-    public String toString(){
-        if (block2 == null){
-            return "if (" + condition.toString() + ")" + block.toString();
-        }
-        else{
-            return "if (" + condition.toString() + ")" + block.toString() + "else" + block2.toString();
-        }
-    }
-    
-}
-
-class IfElseIfNode implements ProgramNode{
-    BooleanNode cond;
-    ProgramNode blockT;
-    List<Map<BooleanNode, ProgramNode>> listOfMaps; // list of maps containing boolean node linked to program node
-    
-    public IfElseIfNode(BooleanNode cond, ProgramNode blockT, List<Map<BooleanNode, ProgramNode>> listOfMaps){
-        this.cond = cond;
-        this.blockT = blockT;
-        this.listOfMaps = listOfMaps;
-    }
-    
-    public void execute(Robot robot){
-        if (cond.evaluate(robot)){ // if condition true
-            blockT.execute(robot); // execute the true block (programNode) 
-        }
-        else{ // otherwise
-            for (Map<BooleanNode, ProgramNode> mapping : listOfMaps){ // for each entry in map of boolean node -> program node
-                for (BooleanNode condition : mapping.keySet()){
-                    if (condition.evaluate(robot)){ // if condition is true
-                        mapping.get(condition).execute(robot); // execute it
-                        return; // returns out after the first else if statement is executed 
-                    }
-                }
-            }
-        }
-    }
-    
-    public String toString(){
-        String ans = "if (" + cond.toString() + ")" + blockT.toString();
-        
-        for (int i = 0; i < listOfMaps.size(); i++){
-            Map<BooleanNode, ProgramNode> map = listOfMaps.get(i);
-            Set<BooleanNode> set = map.keySet();
-            
-            for (BooleanNode condition : set){
-                ProgramNode blockToCopy = map.get(condition);
-                ans = ans + "elif(" + condition + ")" + blockToCopy;
-            }
-        }
-        return ans;
-    }
-}
-
-class IfElseIfElseNode implements ProgramNode{
-    
-    BooleanNode cond;
-    ProgramNode blockT;
-    ProgramNode blockF;
-    
-    List<Map<BooleanNode, ProgramNode>> listOfMaps; // list of maps of BooleanNode -> ProgramNode
-    
-    public IfElseIfElseNode(BooleanNode cond, ProgramNode blockT, ProgramNode blockF, List<Map<BooleanNode, ProgramNode>> elseIfMapList){
-        this.cond = cond;
-        this.blockT = blockT;
-        this.blockF = blockF;
-        this.listOfMaps = elseIfMapList;
-    }
-    
-    public void execute(Robot robot){
-        if (cond.evaluate(robot)){
-            blockT.execute(robot); // if first if block is true, execute it
-        }
-        else{
-            for (Map<BooleanNode, ProgramNode> mapping : listOfMaps){ // otherwise, for each map
-                for (BooleanNode condition : mapping.keySet()){ // get the boolean Node
-                    if (condition.evaluate(robot)){ // if true, execute it and return out
-                        mapping.get(condition).execute(robot);
-                        return; // return out after first is executed
-                    }
-                }
-            }
-            blockF.execute(robot); // if it gets through all without executing, execute the else statement
-        }
-    }
-    
-   
-    public String toString(){
-        String ans = "if (" + cond +")"+ blockT;
-        for (int i = 0; i < listOfMaps.size(); i++){
-            Map<BooleanNode, ProgramNode> map = listOfMaps.get(i);
-            Set<BooleanNode> set = map.keySet();
-            for (BooleanNode b : set){
-                ProgramNode blockToCopy = map.get(b);
-                ans = ans + " elif(" + b + ")" +  blockToCopy ;
-            }
-        }
-        ans = ans + " else " + blockF;
-        return ans;
-    }
-    
-}
-
-class WhileNode implements ProgramNode{
-    BooleanNode condition;
-    ProgramNode block;
-    
-    public WhileNode(BooleanNode condition, ProgramNode block){this.condition = condition; this.block = block;}
-    public void execute(Robot robot){while (condition.evaluate(robot)){block.execute(robot);}}
-    
-    public String toString(){
-        return "while (" + condition.toString() + ")" + block.toString();
-    }
-}
-
-class GreaterNode implements BooleanNode{
-    IntNode compare;
-    IntNode value;
-    
-    public GreaterNode(IntNode compare, IntNode value){
-        this.compare = compare;
-        this.value = value;
-    }
-    
-    public boolean evaluate(Robot robot){
-        if (compare.evaluate(robot) > value.evaluate(robot)){
-            return true;
-        }
-        else{
-            return false;
-        }
-    }
-    
-    public String toString(){
-        return "gt(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
-    }
-
-}
-
-class LessNode implements BooleanNode{
-    IntNode compare;
-    IntNode value;
-    
-    public LessNode(IntNode compare, IntNode value){
-        this.compare = compare;
-        this.value = value;
-    }
-    
-    public boolean evaluate(Robot robot){
-        return (compare.evaluate(robot) < value.evaluate(robot));
-    }
-    
-    public String toString(){
-        return "lt(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
-    }
-    
-}
-
-class EqualNode implements BooleanNode{
-    IntNode compare;
-    IntNode value;
-    
-    public EqualNode(IntNode compare, IntNode value){
-        this.compare = compare;
-        this.value = value;
-    }
-    
-    public boolean evaluate(Robot robot){
-        if (compare.evaluate(robot) == value.evaluate(robot)){
-            return true;
-        }
-        else{
-            return false;
-        }
-    }
-    
-    public String toString(){
-        return "eq(" + String.valueOf(compare) + "," + String.valueOf(value) + ")";
-    }
-    
-}
-
-class FuelLeftNode implements IntNode{
-    
-    public int evaluate(Robot robot){return robot.getFuel();}
-    
-    public String toString(){
-        return "fuelleft";
-    }
-    
-}
-
-class OppLrNode implements IntNode{
-    public int evaluate(Robot robot){return robot.getOpponentLR();}
-    
-    public String toString(){
-        return "oppLr";
-    }
-}
-
-class OppFbNode implements IntNode{
-    public int evaluate(Robot robot){return robot.getOpponentFB();}
-    
-    public String toString(){
-        return "oppFb";
-    }
-}
-
-class NumBarrelsNode implements IntNode{
-    public int evaluate(Robot robot){return robot.numBarrels();}
-    
-    public String toString(){
-        return "numBarrels";
-    }
-}
-
-class BarrelLrNode implements IntNode{
-    IntNode num;
-    
-    public BarrelLrNode(IntNode num){
-        this.num = num;
-        
-    }
-    
-    public int evaluate(Robot robot){
-        if (this.num == null){
-            return robot.getClosestBarrelLR();
-        }
-        else{
-            return robot.getBarrelLR(num.evaluate(robot));
-        }
-    }
-    
-    public String toString(){
-        if (num != null){
-            return "barrelLR(" + num.toString() +")";
-        }
-        else{
-            return "barrelLR";
-        }
-    }
-}
-
-class BarrelFbNode implements IntNode{
-    IntNode num;
-    
-    public BarrelFbNode(IntNode num){
-        this.num = num;
-    }
-    
-    public int evaluate(Robot robot){if (this.num == null){
-            return robot.getClosestBarrelFB();
-        }
-        else{
-            return robot.getBarrelFB(num.evaluate(robot));
-        }
-    }
-    
-    public String toString(){
-        if (num != null){
-            return "barrelFB(" + num.toString() + ")";
-        }
-        else{
-            return "barrelFB";
-        }
-    }
-}
-
-class WallDistNode implements IntNode{
-    public int evaluate(Robot robot){return robot.getDistanceToWall();}
-    
-    public String toString(){
-        return "wallDist";
-    }
-}
-
-class ExprNode implements IntNode{
-    int value;
-    
-    public ExprNode(int value){
-        this.value = value;
-    }
-    
-    public int evaluate(Robot robot){
-        return value;
-    }
-    
-    public String toString(){
-        return String.valueOf(value);
-    }
-}
-
-
-class AddNode implements IntNode{
-    final String operator = "+";
-    
-    IntNode expr1;
-    
-    IntNode expr2;
-    
-    public AddNode(IntNode expr1, IntNode expr2){
-        this.expr1 = expr1;
-        this.expr2 = expr2;
-    }
-    
-    
-    public int evaluate(Robot robot){
-        return expr1.evaluate(robot) + expr2.evaluate(robot);
-    }
-    
-    public String toString(){
-        return "add(" + expr1.toString() + "," + expr2.toString() + ")";
-    }
-}
-
-class SubNode implements IntNode{
-    final String operator = "-";
-    IntNode expr1;
-    
-    IntNode expr2;
-    
-    public SubNode(IntNode expr1, IntNode expr2){
-        this.expr1 = expr1;
-        this.expr2 = expr2;
-    }
-    
-    
-    public int evaluate(Robot robot){
-        return expr1.evaluate(robot) - expr2.evaluate(robot);
-    }
-    
-    public String toString(){
-        return "sub(" + expr1.toString() + "," + expr2.toString() + ")";
-    }
-}
-
-class MulNode implements IntNode{
-    final String operator = "*";
-    
-    IntNode expr1;
-    
-    IntNode expr2;
-    
-    public MulNode(IntNode expr1, IntNode expr2){
-        this.expr1 = expr1;
-        this.expr2 = expr2;
-    }
-    
-    
-    public int evaluate(Robot robot){
-        return expr1.evaluate(robot) * expr2.evaluate(robot);
-    }
-    
-    public String toString(){
-        return "mul(" + expr1.toString() + "," + expr2.toString() + ")";
-    }
-    
-}
-
-class DivNode implements IntNode{
-    final String operator = "/";
-    
-    IntNode expr1;
-    
-    IntNode expr2;
-    
-    public DivNode(IntNode expr1, IntNode expr2){
-        this.expr1 = expr1;
-        this.expr2 = expr2;
-    }
-    
-    
-    public int evaluate(Robot robot){
-        return expr1.evaluate(robot) / expr2.evaluate(robot);
-    }
-    
-    public String toString(){
-        return "div(" + expr1.toString() + "," + expr2.toString() + ")";
-    }
-    
-}
-
-class MoveVarNode implements ProgramNode{
-     IntNode expr;
-     
-     public MoveVarNode(IntNode expr){
-         this.expr = expr;
-     }
-     
-     public void execute(Robot robot){
-         
-         int numTimes = expr.evaluate(robot);
-         for (int i = 0; i < numTimes; i++){
-             robot.move();
-         }
-         
-     }
-     
-     public String toString(){
-         return "move(" + expr.toString() + ");";
-     }
-}
-
-class WaitVarNode implements ProgramNode{
-    IntNode expr;
-    
-    public WaitVarNode(IntNode expr){
-        this.expr = expr;
-    }
-    
-    public void execute(Robot robot){
-        
-        int numTimes = expr.evaluate(robot);
-        for (int i = 0; i < numTimes; i++){
-            robot.idleWait();
-        }
-
-        
-    }
-    
-    public String toString(){
-         return "wait(" + expr.toString() + ");";
-     }
-}
-
-class AndNode implements BooleanNode{
-    BooleanNode cond1;
-    BooleanNode cond2;
-    
-    public AndNode(BooleanNode cond1, BooleanNode cond2){
-        this.cond1 = cond1;
-        this.cond2 = cond2;
-    }
-    
-    public boolean evaluate(Robot robot){
-        return (cond1.evaluate(robot) && cond2.evaluate(robot));
-    }
-    
-    public String toString(){
-        return "and(" + cond1.toString() + "," + cond2.toString();
-    }
-    
-}
-
-class NotNode implements BooleanNode{
-    BooleanNode cond1;
-    
-    public NotNode(BooleanNode cond1){
-        this.cond1 = cond1;
-    }
-    
-    public boolean evaluate(Robot robot){
-        return !cond1.evaluate(robot);
-    }
-    
-    public String toString(){
-        return "not(" + cond1.toString() + ")";
-    }
-    
-}
-
-class OrNode implements BooleanNode{
-    BooleanNode cond1;
-    BooleanNode cond2;
-    
-    public OrNode(BooleanNode cond1, BooleanNode cond2){
-        this.cond1 = cond1;
-        this.cond2 = cond2;
-    }
-    
-    public boolean evaluate(Robot robot){
-       return (cond1.evaluate(robot) || cond2.evaluate(robot));
-    }
-    
-    public String toString(){
-        return "or(" + cond1.toString() + "," + cond2.toString();
-    }
-    
-}
-
-class AssgnNode implements ProgramNode{
-    String variable;
-    IntNode num;
-    
-    public AssgnNode(String variable, IntNode num){
-        this.variable = variable;
-        this.num = num;
-        
-    }
-    public void execute(Robot robot){
-        robot.variables.put(this.variable, num.evaluate(robot));
-        
-    }
-    
-    public String toString(){
-        return variable + "=" + num.toString() + ";";
-    }
-}
-
-class VarNode implements IntNode{
-    String name;
-    public VarNode(String name){
-        this.name = name;
-    }
-    
-    public int evaluate(Robot robot){
-        if (robot.variables.containsKey(this.name)){
-            return robot.variables.get(this.name);
-        }
-        else{
-            robot.variables.put(this.name, 0);
-            return 0;
-        }
-    }
-    
-    public String toString(){
-        return name;
-    }
-    
-}
\ No newline at end of file
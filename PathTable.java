@@ -0,0 +1,124 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shortest paths on the board, counted in turns: a move forward is one turn,
+ * and so is each turn left, right or around. A robot's state is its cell and
+ * the way it faces (0 north, 1 west, 2 south, 3 east, as in Robot and
+ * BatchWorld), and the tables hold, for each target cell, the turns from
+ * every state to that cell.
+ *
+ * The tables for an empty board are worked out when the class is loaded.
+ * The other robot blocks a cell, so the tables going around each blocked
+ * cell are worked out the first time they are asked for and kept: as the
+ * other robot moves about, only the tables for the cells it comes to are
+ * added. A table never changes once made, so they are shared by every
+ * world in the process; all of them together come to 12 MB.
+ */
+public final class PathTable {
+
+    private static final int SIZE = World.SIZE, CELLS = SIZE * SIZE, STATES = CELLS * 4;
+    private static final byte UNREACHABLE = -1;
+    private static final int[] DX = { 0, -1, 0, 1 }, DY = { -1, 0, 1, 0 };    // a move forward, by facing
+
+    private static final byte[][] OPEN = new byte[CELLS][];
+    // by target cell * CELLS + blocked cell
+    private static final AtomicReferenceArray<byte[]> BLOCKED = new AtomicReferenceArray<>(CELLS * CELLS);
+
+    static {
+        for (int target = 0; target < CELLS; target++)
+            OPEN[target] = search(target, -1);
+    }
+
+    private PathTable() {
+    }
+
+    /**
+     * Turns from (x, y), facing dir, until the robot stands on the target,
+     * not going through the blocked cell (blockedX < 0 for none). INFINITY
+     * if the target can not be reached.
+     */
+    public static int distance(int x, int y, int dir, int targetX, int targetY, int blockedX, int blockedY) {
+        byte turns = table(targetY * SIZE + targetX, blockedX, blockedY)[state(x, y, dir)];
+        return (turns == UNREACHABLE) ? Robot.INFINITY : turns;
+    }
+
+    /**
+     * The first action of a shortest path to the target, as a Robot.ACTION_
+     * code: ACTION_TAKE_FUEL on the target itself, and INFINITY if it can not
+     * be reached. Of equally short paths, moving is preferred, then turning
+     * left, right and around.
+     */
+    public static int firstAction(int x, int y, int dir, int targetX, int targetY, int blockedX, int blockedY) {
+        byte[] table = table(targetY * SIZE + targetX, blockedX, blockedY);
+        int turns = table[state(x, y, dir)];
+        if (turns == UNREACHABLE)
+            return Robot.INFINITY;
+        if (turns == 0)
+            return Robot.ACTION_TAKE_FUEL;
+        int nx = x + DX[dir], ny = y + DY[dir];
+        if (onBoard(nx, ny) && table[state(nx, ny, dir)] == turns - 1)
+            return Robot.ACTION_MOVE;
+        if (table[state(x, y, (dir + 1) & 3)] == turns - 1)
+            return Robot.ACTION_TURN_LEFT;
+        if (table[state(x, y, (dir + 3) & 3)] == turns - 1)
+            return Robot.ACTION_TURN_RIGHT;
+        return Robot.ACTION_TURN_AROUND;
+    }
+
+    private static byte[] table(int target, int blockedX, int blockedY) {
+        if (blockedX < 0 || !onBoard(blockedX, blockedY))
+            return OPEN[target];
+        int index = target * CELLS + blockedY * SIZE + blockedX;
+        byte[] table = BLOCKED.get(index);
+        if (table == null) {
+            table = search(target, blockedY * SIZE + blockedX);
+            BLOCKED.compareAndSet(index, null, table);
+        }
+        return table;
+    }
+
+    /** Breadth first search back from the target, over states */
+    private static byte[] search(int target, int blocked) {
+        byte[] turns = new byte[STATES];
+        Arrays.fill(turns, UNREACHABLE);
+        if (target == blocked)
+            return turns;
+        int[] queue = new int[STATES];
+        int head = 0, tail = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            turns[target * 4 + dir] = 0;
+            queue[tail++] = target * 4 + dir;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int cell = state >> 2, dir = state & 3;
+            byte next = (byte) (turns[state] + 1);
+            // the states one action before this one: a turn on the spot, or a move from behind
+            for (int by = 1; by < 4; by++) {
+                int before = cell * 4 + ((dir + by) & 3);
+                if (turns[before] == UNREACHABLE) {
+                    turns[before] = next;
+                    queue[tail++] = before;
+                }
+            }
+            int px = cell % SIZE - DX[dir], py = cell / SIZE - DY[dir];
+            if (onBoard(px, py) && py * SIZE + px != blocked) {
+                int before = (py * SIZE + px) * 4 + dir;
+                if (turns[before] == UNREACHABLE) {
+                    turns[before] = next;
+                    queue[tail++] = before;
+                }
+            }
+        }
+        return turns;
+    }
+
+    private static int state(int x, int y, int dir) {
+        return (y * SIZE + x) * 4 + dir;
+    }
+
+    private static boolean onBoard(int x, int y) {
+        return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+    }
+}
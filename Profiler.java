@@ -0,0 +1,434 @@
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often each part of a robot program runs and how long it takes.
+ * The program is copied with every statement, condition and sensor wrapped
+ * in a probe, so a program that is not profiled runs exactly as before.
+ *
+ * Times are of the program thinking: the time a robot spends waiting for its
+ * turn to be committed is left out. Each part of the program is placed by
+ * its line in the program as printed by printSource, since the parser does
+ * not keep the original positions.
+ *
+ * A profiler is for one robot: its counters are plain fields, written only
+ * by that robot's thread.
+ */
+public class Profiler {
+
+    private static final int HOT_SPOTS = 15;
+
+    private final ProgramNode program;
+    private final List<Site> sites = new ArrayList<>();
+    private final List<Line> lines = new ArrayList<>();
+
+    /** A program, or null for the default program, which is not profiled */
+    public Profiler(ProgramNode program) {
+        Site root = new Site("program", null, 0);
+        this.program = (program == null) ? null : statement(program, root, 0);
+    }
+
+    /** The instrumented copy of the program, to give to the robot */
+    public ProgramNode getProgram() {
+        return program;
+    }
+
+    /** One part of the program: where it is, and how often and long it ran */
+    private static class Site {
+        final String label;
+        final Site parent;      // the statement it is part of, or null
+        final int line;
+        long count, nanos, childNanos;
+        List<Site> branches;    // of an if or while: the blocks it can run
+
+        Site(String label, Site parent, int line) {
+            this.label = label;
+            this.parent = parent;
+            this.line = line;
+        }
+
+        void exit(long time) {
+            count++;
+            nanos += time;
+            if (parent != null)
+                parent.childNanos += time;
+        }
+
+        long self() {
+            return nanos - childNanos;
+        }
+    }
+
+    private static class Line {
+        final String text;
+        final Site site;        // counted on this line, or null
+
+        Line(String text, Site site) {
+            this.text = text;
+            this.site = site;
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Copying the program with probes
+
+    private ProgramNode statement(ProgramNode node, Site parent, int depth) {
+        if (node instanceof ProgNode prog) {
+            List<ProgramNode> statements = new ArrayList<>();
+            for (ProgramNode p : prog.programList)
+                statements.add(statement(p, parent, depth));
+            return new ProgNode(statements);
+        }
+        if (node instanceof StatementNode s)
+            return statement(s.statement, parent, depth);
+        if (node instanceof ActionNode a)
+            return statement(a.action, parent, depth);
+        if (node instanceof BlockNode block) {
+            List<ProgramNode> statements = new ArrayList<>();
+            for (ProgramNode p : block.statementList)
+                statements.add(statement(p, parent, depth));
+            return new BlockNode(statements);
+        }
+
+        String indent = "    ".repeat(depth);
+        Site site;
+        ProgramNode copy;
+        if (node instanceof LoopNode loop) {
+            site = line(indent + "loop {", "loop", parent);
+            ProgramNode body = block(loop.block, site, depth + 1);
+            copy = new LoopNode(body);
+            close(indent);
+        } else if (node instanceof WhileNode w) {
+            site = line(indent + "while (" + w.condition + ") {", "while (" + w.condition + ")", parent);
+            BooleanNode condition = condition(w.condition, site);
+            copy = new WhileNode(condition, block(w.block, site, depth + 1));
+            close(indent);
+        } else if (node instanceof IfNode i) {
+            site = line(indent + "if (" + i.condition + ") {", "if (" + i.condition + ")", parent);
+            BooleanNode condition = condition(i.condition, site);
+            ProgramNode then = block(i.block, site, depth + 1);
+            ProgramNode otherwise = null;
+            if (i.block2 != null) {
+                branchLine(indent + "} else {");
+                otherwise = block(i.block2, site, depth + 1);
+            }
+            copy = new IfNode(condition, then, otherwise);
+            close(indent);
+        } else if (node instanceof IfElseIfNode i) {
+            site = line(indent + "if (" + i.cond + ") {", "if (" + i.cond + ")", parent);
+            BooleanNode condition = condition(i.cond, site);
+            ProgramNode then = block(i.blockT, site, depth + 1);
+            copy = new IfElseIfNode(condition, then, elifs(i.listOfMaps, site, indent, depth));
+            close(indent);
+        } else if (node instanceof IfElseIfElseNode i) {
+            site = line(indent + "if (" + i.cond + ") {", "if (" + i.cond + ")", parent);
+            BooleanNode condition = condition(i.cond, site);
+            ProgramNode then = block(i.blockT, site, depth + 1);
+            List<Map<BooleanNode, ProgramNode>> elifs = elifs(i.listOfMaps, site, indent, depth);
+            branchLine(indent + "} else {");
+            copy = new IfElseIfElseNode(condition, then, block(i.blockF, site, depth + 1), elifs);
+            close(indent);
+        } else if (node instanceof AssgnNode a) {
+            site = line(indent + a, a.toString(), parent);
+            copy = new AssgnNode(a.variable, expression(a.num, site));
+        } else if (node instanceof MoveVarNode m) {
+            site = line(indent + m, m.toString(), parent);
+            copy = new MoveVarNode(expression(m.expr, site));
+        } else if (node instanceof WaitVarNode w) {
+            site = line(indent + w, w.toString(), parent);
+            copy = new WaitVarNode(expression(w.expr, site));
+        } else {
+            // an action, with nothing inside it to profile
+            site = line(indent + node, node.toString(), parent);
+            copy = node;
+        }
+        return new ProgramProbe(copy, site);
+    }
+
+    /** A block that a statement runs, counted as one of its branches */
+    private ProgramNode block(ProgramNode block, Site owner, int depth) {
+        Site branch = new Site("branch", null, lines.size() - 1);
+        if (owner.branches == null)
+            owner.branches = new ArrayList<>();
+        owner.branches.add(branch);
+        return new BranchProbe(statement(block, owner, depth), branch);
+    }
+
+    private List<Map<BooleanNode, ProgramNode>> elifs(List<Map<BooleanNode, ProgramNode>> maps, Site site,
+                                                      String indent, int depth) {
+        List<Map<BooleanNode, ProgramNode>> copy = new ArrayList<>();
+        for (Map<BooleanNode, ProgramNode> map : maps) {
+            Map<BooleanNode, ProgramNode> mapCopy = new LinkedHashMap<>();
+            for (Map.Entry<BooleanNode, ProgramNode> entry : map.entrySet()) {
+                branchLine(indent + "} elif (" + entry.getKey() + ") {");
+                BooleanNode condition = condition(entry.getKey(), site);
+                mapCopy.put(condition, block(entry.getValue(), site, depth + 1));
+            }
+            copy.add(mapCopy);
+        }
+        return copy;
+    }
+
+    private BooleanNode condition(BooleanNode node, Site parent) {
+        Site site = site(node.toString(), parent, parent.line);
+        BooleanNode copy;
+        if (node instanceof AndNode a)
+            copy = new AndNode(condition(a.cond1, site), condition(a.cond2, site));
+        else if (node instanceof OrNode o)
+            copy = new OrNode(condition(o.cond1, site), condition(o.cond2, site));
+        else if (node instanceof NotNode n)
+            copy = new NotNode(condition(n.cond1, site));
+        else if (node instanceof GreaterNode g)
+            copy = new GreaterNode(expression(g.compare, site), expression(g.value, site));
+        else if (node instanceof LessNode l)
+            copy = new LessNode(expression(l.compare, site), expression(l.value, site));
+        else if (node instanceof EqualNode e)
+            copy = new EqualNode(expression(e.compare, site), expression(e.value, site));
+        else
+            copy = node;
+        return new BooleanProbe(copy, site);
+    }
+
+    private IntNode expression(IntNode node, Site parent) {
+        if (node instanceof NumNode || node instanceof ExprNode)
+            return node;    // a number costs nothing worth counting
+        Site site = site(node.toString(), parent, parent.line);
+        IntNode copy;
+        if (node instanceof AddNode a)
+            copy = new AddNode(expression(a.expr1, site), expression(a.expr2, site));
+        else if (node instanceof SubNode s)
+            copy = new SubNode(expression(s.expr1, site), expression(s.expr2, site));
+        else if (node instanceof MulNode m)
+            copy = new MulNode(expression(m.expr1, site), expression(m.expr2, site));
+        else if (node instanceof DivNode d)
+            copy = new DivNode(expression(d.expr1, site), expression(d.expr2, site));
+        else if (node instanceof BarrelLrNode b && b.num != null)
+            copy = new BarrelLrNode(expression(b.num, site));
+        else if (node instanceof BarrelFbNode b && b.num != null)
+            copy = new BarrelFbNode(expression(b.num, site));
+        else if (node instanceof BarrelDistNode b && b.num != null)
+            copy = new BarrelDistNode(expression(b.num, site));
+        else if (node instanceof BarrelActNode b && b.num != null)
+            copy = new BarrelActNode(expression(b.num, site));
+        else
+            copy = node;
+        return new IntProbe(copy, site);
+    }
+
+    /** A statement on a line of its own */
+    private Site line(String text, String label, Site parent) {
+        Site site = site(label, parent, lines.size());
+        lines.add(new Line(text, site));
+        return site;
+    }
+
+    /** The else or elif line of an if, counted by the branch that follows */
+    private void branchLine(String text) {
+        lines.add(new Line(text, null));
+    }
+
+    private void close(String indent) {
+        lines.add(new Line(indent + "}", null));
+    }
+
+    private Site site(String label, Site parent, int line) {
+        Site site = new Site(label.replace(';', ' ').trim(), parent, line);
+        sites.add(site);
+        return site;
+    }
+
+    // ---------------------------------------------------------------
+    // The probes
+
+    private static class ProgramProbe implements ProgramNode {
+        final ProgramNode node;
+        final Site site;
+
+        ProgramProbe(ProgramNode node, Site site) {
+            this.node = node;
+            this.site = site;
+        }
+
+        public void execute(Robot robot) {
+            long blocked = robot.getBlockedNanos();
+            long start = System.nanoTime();
+            try {
+                node.execute(robot);
+            } finally {
+                site.exit(System.nanoTime() - start - (robot.getBlockedNanos() - blocked));
+            }
+        }
+
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    /** Counts the runs of a block, and passes its time on to its statement */
+    private static class BranchProbe implements ProgramNode {
+        final ProgramNode node;
+        final Site site;
+
+        BranchProbe(ProgramNode node, Site site) {
+            this.node = node;
+            this.site = site;
+        }
+
+        public void execute(Robot robot) {
+            site.count++;
+            node.execute(robot);
+        }
+
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    private static class BooleanProbe implements BooleanNode {
+        final BooleanNode node;
+        final Site site;
+
+        BooleanProbe(BooleanNode node, Site site) {
+            this.node = node;
+            this.site = site;
+        }
+
+        public boolean evaluate(Robot robot) {
+            long start = System.nanoTime();
+            try {
+                return node.evaluate(robot);
+            } finally {
+                site.exit(System.nanoTime() - start);
+            }
+        }
+
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    private static class IntProbe implements IntNode {
+        final IntNode node;
+        final Site site;
+
+        IntProbe(IntNode node, Site site) {
+            this.node = node;
+            this.site = site;
+        }
+
+        public int evaluate(Robot robot) {
+            long start = System.nanoTime();
+            try {
+                return node.evaluate(robot);
+            } finally {
+                site.exit(System.nanoTime() - start);
+            }
+        }
+
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Reports
+
+    /** The parts of the program that took the most time of their own */
+    public void printReport(PrintStream out) {
+        List<Site> hot = new ArrayList<>(sites);
+        hot.sort(Comparator.comparingLong(Site::self).reversed());
+        out.println(String.format("%10s %10s %10s %6s  %s", "self ms", "total ms", "count", "line", "node"));
+        for (Site site : hot.subList(0, Math.min(HOT_SPOTS, hot.size()))) {
+            if (site.count == 0)
+                break;
+            out.println(String.format("%10.3f %10.3f %10d %6d  %s",
+                    site.self() / 1e6, site.nanos / 1e6, site.count, site.line + 1, site.label));
+        }
+    }
+
+    /**
+     * The program, a statement a line, with how often each ran and how long
+     * it took; ifs show how often each branch was taken, and loops how many
+     * times they went round.
+     */
+    public void printSource(PrintStream out) {
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            Site site = line.site;
+            String counts = "";
+            if (site != null) {
+                counts = String.format("%10d %10.3f", site.count, site.nanos / 1e6);
+            }
+            out.println(String.format("%4d %21s  %-60s%s", i + 1, counts, line.text, branches(site)));
+        }
+    }
+
+    private static String branches(Site site) {
+        if (site == null || site.branches == null || site.count == 0)
+            return "";
+        StringBuilder text = new StringBuilder();
+        if (site.label.startsWith("if")) {
+            text.append("  // taken");
+            for (Site branch : site.branches)
+                text.append(String.format(" %.0f%%", 100d * branch.count / site.count));
+        } else {
+            long rounds = 0;
+            for (Site branch : site.branches)
+                rounds += branch.count;
+            text.append(String.format("  // %d rounds, %.1f a run", rounds, (double) rounds / site.count));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The time of each part of the program as folded stacks, one line per
+     * part ("program;while (...);move 1234", in microseconds), the input
+     * format of flamegraph.pl and speedscope.
+     */
+    public void printFolded(PrintStream out) {
+        for (Site site : sites) {
+            long micros = site.self() / 1000;
+            if (micros <= 0)
+                continue;
+            StringBuilder stack = new StringBuilder(site.label);
+            for (Site s = site.parent; s != null; s = s.parent)
+                stack.insert(0, s.label + ";");
+            out.println(stack + " " + micros);
+        }
+    }
+
+    /**
+     * Play one match with the program profiled, and print the report and
+     * the annotated program, and the folded stacks to a file if one is
+     * given.
+     * Usage: Profiler program [opponent [seed [foldedFile]]]
+     * where a program is a file or "default".
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 1) {
+            System.out.println("Usage: Profiler program [opponent [seed [foldedFile]]]");
+            return;
+        }
+        ProgramNode opponent = Match.loadProgram((args.length > 1) ? args[1] : "default");
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+        Match match = new Match(Match.loadProgram(args[0]), opponent, seed).setProfiling(true);
+        System.out.println(match.play());
+        Profiler profiler = match.getProfiler(1);
+        if (profiler.getProgram() == null)
+            return;
+        System.out.println();
+        profiler.printReport(System.out);
+        System.out.println();
+        profiler.printSource(System.out);
+        if (args.length > 3) {
+            try (PrintStream out = new PrintStream(args[3])) {
+                profiler.printFolded(out);
+            }
+        }
+    }
+}
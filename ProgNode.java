@@ -0,0 +1,18 @@
+import java.util.List;
+
+class ProgNode implements ProgramNode{
+    final List<ProgramNode> programList;
+    
+    public ProgNode(List<ProgramNode> p){this.programList = p;}
+    
+    public void execute(Robot robot){robot.countNode(); for (ProgramNode p : programList){p.execute(robot);}}
+    
+    public String toString(){
+        String ans = "";
+        for (ProgramNode n : programList){
+            ans += n.toString() + " ";
+        }
+        return ans;
+    }
+    
+}
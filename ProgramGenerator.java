@@ -0,0 +1,498 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**
+ * Makes random robot programs from the grammar of Parser (STMT, EXPR, COND,
+ * SENS, ACT, VAR), for load and fuzz testing. The number of statements, the
+ * depth of blocks and expressions, and the mix of statements can be set.
+ *
+ * A program can be written out as text (write) or built straight into a
+ * tree (generateTree). Both make the same choices from the same seed, so the
+ * tree is the one the parser would give for the text.
+ *
+ * A malformed generator spoils each program it writes at one random token,
+ * by dropping it or putting a stray token in front of it, so the text no
+ * longer parses (see ParserFailureException).
+ */
+public class ProgramGenerator {
+
+    // kinds of statement, for setMix
+    public static final int ACTION = 0, IF = 1, WHILE = 2, LOOP = 3, ASSIGN = 4;
+
+    private static final String[] ACTIONS = {
+        "move", "turnL", "turnR", "turnAround", "takeFuel", "wait", "shieldOn", "shieldOff" };
+    private static final String[] SENSORS = {
+        "fuelLeft", "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB", "barrelDist", "barrelAct",
+        "wallDist" };
+    private static final String[] OPERATORS = { "add", "sub", "mul", "div" };
+    private static final String[] RELATIONS = { "lt", "gt", "eq" };
+    private static final String[] JUNK = { "@", "}", ",", ";", "else" };   // not valid before any token
+
+    private final SplittableRandom random;
+    private int statements = 20;
+    private int blockSize = 3;
+    private int maxDepth = 3;
+    private int maxExpressionDepth = 3;
+    private int[] mix = { 8, 3, 1, 1, 2 };
+    private int variables = 4;
+    private boolean malformed;
+    private long nodes;
+
+    private StringBuilder text;
+    private int tokens, spoilAt;
+
+    public ProgramGenerator(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /** Statements at the top level of a program */
+    public ProgramGenerator setStatements(int statements) {
+        this.statements = statements;
+        return this;
+    }
+
+    /** The most statements in a nested block */
+    public ProgramGenerator setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /** How deep blocks may nest; 0 keeps to actions and assignments */
+    public ProgramGenerator setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /** How deep expressions and conditions may nest */
+    public ProgramGenerator setMaxExpressionDepth(int maxExpressionDepth) {
+        this.maxExpressionDepth = maxExpressionDepth;
+        return this;
+    }
+
+    /** Relative weights of ACTION, IF, WHILE, LOOP and ASSIGN statements */
+    public ProgramGenerator setMix(int actions, int ifs, int whiles, int loops, int assignments) {
+        this.mix = new int[] { actions, ifs, whiles, loops, assignments };
+        return this;
+    }
+
+    /** How many variable names to use; 0 for none */
+    public ProgramGenerator setVariables(int variables) {
+        this.variables = variables;
+        return this;
+    }
+
+    public ProgramGenerator setMalformed(boolean malformed) {
+        this.malformed = malformed;
+        return this;
+    }
+
+    /** Program nodes made so far, counting those that were only written out */
+    public long getNodes() {
+        return nodes;
+    }
+
+    // ---------------------------------------------------------------
+    // Choices, shared by text and trees
+
+    private int chooseStatement(int depth) {
+        int total = 0;
+        for (int kind = 0; kind < mix.length; kind++)
+            total += allowed(kind, depth) ? mix[kind] : 0;
+        if (total == 0)
+            return ACTION;
+        int pick = random.nextInt(total);
+        for (int kind = 0; kind < mix.length; kind++) {
+            if (allowed(kind, depth)) {
+                pick -= mix[kind];
+                if (pick < 0)
+                    return kind;
+            }
+        }
+        return ACTION;
+    }
+
+    private boolean allowed(int kind, int depth) {
+        if (kind == ASSIGN)
+            return variables > 0;
+        return kind == ACTION || depth < maxDepth;
+    }
+
+    private String chooseAction() {
+        return ACTIONS[random.nextInt(ACTIONS.length)];
+    }
+
+    /** Whether a move or wait, or a barrel sensor, takes an argument */
+    private boolean chooseArgument(int depth) {
+        return depth < maxExpressionDepth && random.nextInt(4) == 0;
+    }
+
+    private String chooseVariable() {
+        return "$v" + random.nextInt(variables);
+    }
+
+    /** 0 for a number, 1 for a sensor, 2 for a variable, 3 for an operator */
+    private int chooseExpression(int depth) {
+        if (depth >= maxExpressionDepth)
+            return random.nextInt(variables > 0 ? 3 : 2);
+        return random.nextInt(variables > 0 ? 4 : 3) == 0 ? 3 : random.nextInt(variables > 0 ? 3 : 2);
+    }
+
+    private int chooseNumber() {
+        return random.nextInt(-20, 21);
+    }
+
+    /** A relation, or "and", "or" or "not" */
+    private String chooseCondition(int depth) {
+        if (depth >= maxExpressionDepth || random.nextInt(3) != 0)
+            return RELATIONS[random.nextInt(RELATIONS.length)];
+        switch (random.nextInt(3)) {
+        case 0: return "and";
+        case 1: return "or";
+        default: return "not";
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Text
+
+    /** Write one program, as the parser reads it */
+    public void write(Writer out) throws IOException {
+        text = new StringBuilder();
+        tokens = 0;
+        spoilAt = malformed ? random.nextInt(statements * 12 + 1) : -1;
+        for (int i = 0; i < statements; i++) {
+            statement(0, "");
+            out.append(text);
+            text.setLength(0);
+        }
+        if (malformed && tokens <= spoilAt)
+            text.append(JUNK[1]).append('\n');  // an unmatched brace
+        out.append(text);
+        text = null;
+    }
+
+    /** One program as a string */
+    public String generate() {
+        StringWriter out = new StringWriter();
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);     // not from a StringWriter
+        }
+        return out.toString();
+    }
+
+    private void token(String token) {
+        if (tokens++ == spoilAt) {
+            if (random.nextBoolean())
+                return;
+            text.append(' ').append(JUNK[random.nextInt(JUNK.length)]).append(' ');
+        }
+        text.append(token);
+    }
+
+    private void statement(int depth, String indent) {
+        nodes++;
+        text.append(indent);
+        switch (chooseStatement(depth)) {
+        case IF -> {
+            token("if");
+            text.append(' ');
+            parenthesisedCondition();
+            block(depth, indent);
+            int elifs = random.nextInt(3) == 0 ? random.nextInt(1, 3) : 0;
+            for (int i = 0; i < elifs; i++) {
+                text.append(' ');
+                token("elif");
+                text.append(' ');
+                parenthesisedCondition();
+                block(depth, indent);
+            }
+            if (random.nextBoolean()) {
+                text.append(' ');
+                token("else");
+                block(depth, indent);
+            }
+        }
+        case WHILE -> {
+            token("while");
+            text.append(' ');
+            parenthesisedCondition();
+            block(depth, indent);
+        }
+        case LOOP -> {
+            token("loop");
+            block(depth, indent);
+        }
+        case ASSIGN -> {
+            token(chooseVariable());
+            text.append(' ');
+            token("=");
+            text.append(' ');
+            expression(0);
+            token(";");
+        }
+        default -> {
+            String action = chooseAction();
+            token(action);
+            if ((action.equals("move") || action.equals("wait")) && chooseArgument(0)) {
+                token("(");
+                expression(1);
+                token(")");
+            }
+            token(";");
+        }
+        }
+        text.append('\n');
+    }
+
+    private void parenthesisedCondition() {
+        token("(");
+        condition(0);
+        token(")");
+    }
+
+    private void block(int depth, String indent) {
+        nodes++;
+        text.append(' ');
+        token("{");
+        text.append('\n');
+        int size = random.nextInt(1, blockSize + 1);
+        for (int i = 0; i < size; i++)
+            statement(depth + 1, indent + "    ");
+        text.append(indent);
+        token("}");
+    }
+
+    private void condition(int depth) {
+        nodes++;
+        String condition = chooseCondition(depth);
+        token(condition);
+        token("(");
+        if (condition.equals("not")) {
+            condition(depth + 1);
+        } else if (condition.equals("and") || condition.equals("or")) {
+            condition(depth + 1);
+            token(",");
+            text.append(' ');
+            condition(depth + 1);
+        } else {
+            expression(depth + 1);
+            token(",");
+            text.append(' ');
+            expression(depth + 1);
+        }
+        token(")");
+    }
+
+    private void expression(int depth) {
+        nodes++;
+        switch (chooseExpression(depth)) {
+        case 0 -> token(String.valueOf(chooseNumber()));
+        case 1 -> {
+            String sensor = SENSORS[random.nextInt(SENSORS.length)];
+            token(sensor);
+            if (sensor.startsWith("barrel") && chooseArgument(depth)) {
+                token("(");
+                expression(depth + 1);
+                token(")");
+            }
+        }
+        case 2 -> token(chooseVariable());
+        default -> {
+            token(OPERATORS[random.nextInt(OPERATORS.length)]);
+            token("(");
+            expression(depth + 1);
+            token(",");
+            text.append(' ');
+            expression(depth + 1);
+            token(")");
+        }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Trees
+
+    /** One program, built as the parser would build it; never malformed */
+    public ProgramNode generateTree() {
+        List<ProgramNode> program = new ArrayList<>();
+        for (int i = 0; i < statements; i++)
+            program.add(statementNode(0));
+        return new ProgNode(program);
+    }
+
+    private ProgramNode statementNode(int depth) {
+        nodes++;
+        switch (chooseStatement(depth)) {
+        case IF -> {
+            BooleanNode condition = conditionNode(0);
+            ProgramNode blockT = blockNode(depth);
+            List<Map<BooleanNode, ProgramNode>> elifs = new ArrayList<>();
+            int count = random.nextInt(3) == 0 ? random.nextInt(1, 3) : 0;
+            for (int i = 0; i < count; i++) {
+                Map<BooleanNode, ProgramNode> elif = new HashMap<>();
+                BooleanNode elifCondition = conditionNode(0);
+                elif.put(elifCondition, blockNode(depth));
+                elifs.add(elif);
+            }
+            ProgramNode blockF = random.nextBoolean() ? blockNode(depth) : null;
+            if (elifs.isEmpty())
+                return new IfNode(condition, blockT, blockF);
+            if (blockF == null)
+                return new IfElseIfNode(condition, blockT, elifs);
+            return new IfElseIfElseNode(condition, blockT, blockF, elifs);
+        }
+        case WHILE -> {
+            BooleanNode condition = conditionNode(0);
+            return new WhileNode(condition, blockNode(depth));
+        }
+        case LOOP -> {
+            return new LoopNode(blockNode(depth));
+        }
+        case ASSIGN -> {
+            String variable = chooseVariable();
+            return new AssgnNode(variable, expressionNode(0));
+        }
+        default -> {
+            String action = chooseAction();
+            boolean counted = action.equals("move") || action.equals("wait");
+            if (counted && chooseArgument(0)) {
+                IntNode argument = expressionNode(1);
+                return action.equals("move") ? new MoveVarNode(argument) : new WaitVarNode(argument);
+            }
+            switch (action) {
+            case "move": return new MoveNode();
+            case "turnL": return new TurnLNode();
+            case "turnR": return new TurnRNode();
+            case "turnAround": return new TurnAroundNode();
+            case "takeFuel": return new TakeFuelNode();
+            case "wait": return new WaitNode();
+            case "shieldOn": return new ShieldOnNode();
+            default: return new ShieldOffNode();
+            }
+        }
+        }
+    }
+
+    private ProgramNode blockNode(int depth) {
+        nodes++;
+        List<ProgramNode> block = new ArrayList<>();
+        int size = random.nextInt(1, blockSize + 1);
+        for (int i = 0; i < size; i++)
+            block.add(statementNode(depth + 1));
+        return new BlockNode(block);
+    }
+
+    private BooleanNode conditionNode(int depth) {
+        nodes++;
+        String condition = chooseCondition(depth);
+        switch (condition) {
+        case "not": return new NotNode(conditionNode(depth + 1));
+        case "and": return new AndNode(conditionNode(depth + 1), conditionNode(depth + 1));
+        case "or": return new OrNode(conditionNode(depth + 1), conditionNode(depth + 1));
+        }
+        IntNode left = expressionNode(depth + 1);
+        IntNode right = expressionNode(depth + 1);
+        switch (condition) {
+        case "lt": return new LessNode(left, right);
+        case "gt": return new GreaterNode(left, right);
+        default: return new EqualNode(left, right);
+        }
+    }
+
+    private IntNode expressionNode(int depth) {
+        nodes++;
+        switch (chooseExpression(depth)) {
+        case 0 -> {
+            return new NumNode(chooseNumber());
+        }
+        case 1 -> {
+            String sensor = SENSORS[random.nextInt(SENSORS.length)];
+            switch (sensor) {
+            case "fuelLeft": return new FuelLeftNode();
+            case "oppLR": return new OppLrNode();
+            case "oppFB": return new OppFbNode();
+            case "numBarrels": return new NumBarrelsNode();
+            case "wallDist": return new WallDistNode();
+            }
+            IntNode argument = chooseArgument(depth) ? expressionNode(depth + 1) : null;
+            switch (sensor) {
+            case "barrelLR": return new BarrelLrNode(argument);
+            case "barrelFB": return new BarrelFbNode(argument);
+            case "barrelDist": return new BarrelDistNode(argument);
+            default: return new BarrelActNode(argument);
+            }
+        }
+        case 2 -> {
+            return new VarNode(chooseVariable());
+        }
+        default -> {
+            String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+            IntNode left = expressionNode(depth + 1);
+            IntNode right = expressionNode(depth + 1);
+            switch (operator) {
+            case "add": return new AddNode(left, right);
+            case "sub": return new SubNode(left, right);
+            case "mul": return new MulNode(left, right);
+            default: return new DivNode(left, right);
+            }
+        }
+        }
+    }
+
+    /**
+     * Usage: ProgramGenerator outDir count [statements [seed [malformed]]]
+     * Writes count programs to outDir as gen-N.prog, and reports how fast
+     * they were made. With "malformed" every program is spoiled, and any
+     * that still parses, or that the parser fails on with anything but a
+     * ParserFailureException, is reported.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ProgramGenerator outDir count [statements [seed [malformed]]]");
+            return;
+        }
+        Path dir = Files.createDirectories(Paths.get(args[0]));
+        int count = Integer.parseInt(args[1]);
+        ProgramGenerator generator = new ProgramGenerator((args.length > 3) ? Long.parseLong(args[3]) : 1);
+        if (args.length > 2)
+            generator.setStatements(Integer.parseInt(args[2]));
+        boolean malformed = args.length > 4 && args[4].equals("malformed");
+        generator.setMalformed(malformed);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            try (Writer out = Files.newBufferedWriter(dir.resolve("gen-" + i + ".prog"))) {
+                generator.write(out);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d programs, %d nodes in %.2f s, %.0f nodes/s%n",
+                          count, generator.getNodes(), seconds, generator.getNodes() / seconds);
+        if (malformed) {
+            int rejected = 0;
+            for (int i = 0; i < count; i++) {
+                try (Scanner scanner = new Scanner(dir.resolve("gen-" + i + ".prog"))) {
+                    new Parser().parse(scanner);
+                    System.out.println("gen-" + i + ".prog parsed although malformed");
+                } catch (ParserFailureException e) {
+                    rejected++;
+                } catch (RuntimeException e) {
+                    System.out.println("gen-" + i + ".prog failed the parser: " + e);
+                }
+            }
+            System.out.println(rejected + " of " + count + " malformed programs rejected");
+        }
+    }
+}
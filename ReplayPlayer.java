@@ -0,0 +1,133 @@
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
+
+/**
+ * A window that plays back a replay file in a WorldComponent, with a slider
+ * to scrub to any turn, buttons to step and to play, and a speed control.
+ */
+@SuppressWarnings("serial")
+public class ReplayPlayer extends JFrame {
+
+    private static final Integer[] SPEEDS = { 1, 2, 5, 10, 20, WorldComponent.MAX_SPEED };
+
+    private final ReplayReader replay;
+    private final WorldComponent worldComp = new WorldComponent();
+    private final JSlider slider;
+    private final JLabel turnLabel = new JLabel();
+    private final JButton play = new JButton("Play");
+    private boolean following;  // the slider is being moved to follow playback
+
+    public ReplayPlayer(File file) throws IOException {
+        super("Replay: " + file.getName());
+        replay = new ReplayReader(file.toPath());
+        setResizable(false);
+
+        slider = new JSlider(replay.getFirstTurn(), replay.getLastTurn(), replay.getFirstTurn());
+        slider.addChangeListener(e -> {
+            if (!following)
+                worldComp.seek(slider.getValue());
+        });
+
+        JPanel controls = new JPanel(new FlowLayout());
+        controls.add(makeButton("|<", e -> worldComp.seek(replay.getFirstTurn())));
+        controls.add(makeButton("<", e -> worldComp.seek(worldComp.getReplayTurn() - 1)));
+        controls.add(play);
+        play.addActionListener(e -> {
+            if (!worldComp.isReplayPlaying() && worldComp.getReplayTurn() >= replay.getLastTurn())
+                worldComp.seek(replay.getFirstTurn());
+            worldComp.playReplay(!worldComp.isReplayPlaying());
+            updateControls();
+        });
+        controls.add(makeButton(">", e -> worldComp.seek(worldComp.getReplayTurn() + 1)));
+        controls.add(makeButton(">|", e -> worldComp.seek(replay.getLastTurn())));
+        JComboBox<Integer> speed = new JComboBox<>(SPEEDS);
+        speed.addActionListener(e -> worldComp.setSpeed((Integer) speed.getSelectedItem()));
+        controls.add(new JLabel("Speed"));
+        controls.add(speed);
+        controls.add(turnLabel);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(slider, BorderLayout.NORTH);
+        bottom.add(controls, BorderLayout.SOUTH);
+        add(worldComp, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                worldComp.stop();
+            }
+        });
+        worldComp.showReplay(replay, turn -> updateControls());
+        pack();
+        setLocationRelativeTo(null);
+    }
+
+    private void updateControls() {
+        int turn = worldComp.getReplayTurn();
+        following = true;
+        slider.setValue(turn);
+        following = false;
+        play.setText(worldComp.isReplayPlaying() ? "Pause" : "Play");
+        Match.Result result = replay.getResult();
+        String end = (result == null) ? "recording incomplete" : result.toString();
+        turnLabel.setText("turn " + turn + " of " + replay.getLastTurn() + " (" + end + ")");
+    }
+
+    private JButton makeButton(String name, ActionListener action) {
+        JButton button = new JButton(name);
+        button.addActionListener((ActionEvent e) -> {
+            worldComp.playReplay(false);
+            action.actionPerformed(e);
+            updateControls();
+        });
+        return button;
+    }
+
+    /**
+     * Open a replay in a new window, reporting a file that can not be read.
+     */
+    public static void open(File file, int closeOperation) {
+        try {
+            ReplayPlayer player = new ReplayPlayer(file);
+            player.setDefaultCloseOperation(closeOperation);
+            player.setVisible(true);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Can not play " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Usage: ReplayPlayer [file]; asks for the file if it is not given.
+     */
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> {
+            File file = null;
+            if (args.length > 0) {
+                file = new File(args[0]);
+            } else {
+                JFileChooser chooser = new JFileChooser(".");
+                if (chooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION)
+                    file = chooser.getSelectedFile();
+            }
+            if (file != null)
+                open(file, EXIT_ON_CLOSE);
+        });
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads a replay file written by ReplayWriter. The file is memory mapped and
+ * only its trailer and keyframe index are read on opening, so a long match
+ * opens at once. A turn is found by looking up the keyframe before it and
+ * decoding at most KEYFRAME_INTERVAL records from there.
+ *
+ * A file without an index (one that was not closed, or from version 1) is
+ * scanned once on opening instead.
+ *
+ * Safe to use from several threads.
+ */
+public class ReplayReader {
+
+    // the cell a move takes a robot to, by facing (north, east, south, west)
+    private static final int[] DX = { 0, 1, 0, -1 }, DY = { -1, 0, 1, 0 };
+
+    private final MappedByteBuffer file;
+    private final long seed;
+    private final String[] names = new String[3];
+    private final int start;        // where the records start, after the header
+    private int[] keyTurns, keyOffsets;
+    private int lastTurn;
+    private Match.Result result;
+
+    public ReplayReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int size = file.limit();
+        if (size < ReplayWriter.HEADER || file.getInt(0) != ReplayWriter.MAGIC)
+            throw new IOException(path + " is not a replay file");
+        int version = file.get(4);
+        if (version < 1 || version > ReplayWriter.VERSION)
+            throw new IOException(path + " is a version " + version + " replay; this reader knows up to version "
+                                  + ReplayWriter.VERSION);
+        seed = file.getLong(5);
+        int position = ReplayWriter.HEADER;
+        for (int id = 1; id <= 2; id++) {
+            if (version >= 3) {
+                int length = file.get(position) & 0xFF;
+                byte[] bytes = new byte[length];
+                file.get(position + 1, bytes);
+                names[id] = new String(bytes, StandardCharsets.UTF_8);
+                position += 1 + length;
+            } else {
+                names[id] = World.COLOURS[id];
+            }
+        }
+        start = position;
+
+        if (version >= 2 && size >= start + ReplayWriter.TRAILER
+                && file.getInt(size - 4) == ReplayWriter.MAGIC) {
+            readIndex(size - ReplayWriter.TRAILER);
+        } else {
+            scan();
+        }
+        if (keyTurns.length == 0)
+            throw new IOException(path + " holds no turns");
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** The name of the program robot 1 or 2 ran (its colour in old files) */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /** The first turn recorded, normally 0: the world before anything moved */
+    public int getFirstTurn() {
+        return keyTurns[0];
+    }
+
+    public int getLastTurn() {
+        return lastTurn;
+    }
+
+    /** How the match ended, or null if the recording stopped before the end */
+    public Match.Result getResult() {
+        return result;
+    }
+
+    /**
+     * The world over the given turn. A turn that was skipped over when the
+     * match was played gives the last turn recorded before it.
+     */
+    public WorldSnapshot snapshot(int turn) {
+        turn = Math.min(turn, lastTurn);
+        int k = Arrays.binarySearch(keyTurns, turn);
+        if (k < 0)
+            k = Math.max(0, -k - 2);   // the keyframe before the turn
+        ByteBuffer in = file.duplicate();
+        in.position(keyOffsets[k]);
+        WorldSnapshot snapshot = read(in, null);
+        while (snapshot.turn < turn) {
+            WorldSnapshot next = read(in, snapshot);
+            if (next == null || next.turn > turn)
+                break;
+            snapshot = next;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Decode every recorded turn in order, from the start. Only one turn is
+     * held at a time, so a whole archive can be read without filling the heap.
+     */
+    public void forEach(Consumer<WorldSnapshot> action) {
+        ByteBuffer in = file.duplicate();
+        in.position(keyOffsets[0]);
+        WorldSnapshot snapshot = read(in, null);
+        action.accept(snapshot);
+        while (snapshot.turn < lastTurn) {
+            snapshot = read(in, snapshot);
+            if (snapshot == null)
+                break;
+            action.accept(snapshot);
+        }
+    }
+
+    private void readIndex(int trailer) {
+        int count = file.getInt(trailer);
+        int index = file.getInt(trailer + 4);
+        int end = file.getInt(trailer + 8);
+        keyTurns = new int[count];
+        keyOffsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            keyTurns[i] = file.getInt(index + 8 * i);
+            keyOffsets[i] = file.getInt(index + 8 * i + 4);
+        }
+        if (end >= 0) {
+            ByteBuffer in = file.duplicate();
+            in.position(end + 1);
+            result = readResult(in);
+        }
+        // the last turn is in the records after the last keyframe
+        if (count > 0) {
+            ByteBuffer in = file.duplicate();
+            in.position(keyOffsets[count - 1]);
+            in.limit((end >= 0) ? end : index);
+            WorldSnapshot snapshot = null;
+            while (in.hasRemaining())
+                snapshot = read(in, snapshot);
+            lastTurn = snapshot.turn;
+        }
+    }
+
+    /** Decodes the whole file, for one that has no index */
+    private void scan() {
+        ByteBuffer in = file.duplicate();
+        in.position(start);
+        int[] turns = new int[16], offsets = new int[16];
+        int count = 0;
+        WorldSnapshot snapshot = null;
+        while (in.remaining() > 0) {
+            int start = in.position();
+            boolean keyframe = (in.get(start) & ReplayWriter.KEYFRAME) != 0;
+            WorldSnapshot next;
+            try {
+                next = read(in, snapshot);
+            } catch (RuntimeException e) {
+                break;      // cut off part way through a record
+            }
+            if (next == null) {
+                result = readResult(in);
+                break;
+            }
+            if (!keyframe && next.robot(1).action == 0 && next.robot(2).action == 0)
+                break;      // the zeros past the end of a file that was not closed; every played turn has actions
+            if (keyframe) {
+                if (count == turns.length) {
+                    turns = Arrays.copyOf(turns, 2 * count);
+                    offsets = Arrays.copyOf(offsets, 2 * count);
+                }
+                turns[count] = next.turn;
+                offsets[count++] = start;
+            }
+            snapshot = next;
+        }
+        keyTurns = Arrays.copyOf(turns, count);
+        keyOffsets = Arrays.copyOf(offsets, count);
+        lastTurn = (snapshot != null) ? snapshot.turn : 0;
+    }
+
+    /**
+     * Decodes the record at the buffer's position, following on from the
+     * given snapshot. Returns null at the END record, leaving the buffer
+     * just after its flags.
+     */
+    private static WorldSnapshot read(ByteBuffer in, WorldSnapshot last) {
+        int flags = in.get() & 0xFF;
+        if ((flags & ReplayWriter.END) != 0)
+            return null;
+        boolean keyframe = (flags & ReplayWriter.KEYFRAME) != 0;
+        int turn;
+        if (keyframe)
+            turn = getVarint(in);
+        else
+            turn = last.turn + 1 + (((flags & ReplayWriter.GAP) != 0) ? getVarint(in) : 0);
+
+        WorldSnapshot.RobotState[] robots = new WorldSnapshot.RobotState[3];
+        for (int id = 1; id <= 2; id++) {
+            int x, y, fuel;
+            if (keyframe) {
+                x = in.get();
+                y = in.get();
+            } else {
+                x = last.robot(id).toX;
+                y = last.robot(id).toY;
+            }
+            int packed = in.get() & 0xFF;
+            if (keyframe)
+                fuel = getVarint(in);
+            else
+                fuel = last.robot(id).toFuel + (((packed & 0x80) != 0) ? getZigzag(in) : 0);
+            int toFuel = fuel + getZigzag(in);
+            int siphoned = ((flags & ((id == 1) ? ReplayWriter.SIPHON1 : ReplayWriter.SIPHON2)) != 0) ? getVarint(in) : 0;
+            boolean barrel = (flags & ((id == 1) ? ReplayWriter.BARREL1 : ReplayWriter.BARREL2)) != 0;
+            int action = packed & 0x7;
+            boolean shield = (packed & 0x8) != 0;
+            int facing = (packed >> 4) & 0x3;
+            boolean moved = (packed & 0x40) != 0;
+            int toX = moved ? x + DX[facing] : x;
+            int toY = moved ? y + DY[facing] : y;
+            robots[id] = new WorldSnapshot.RobotState(x, y, toX, toY, facing, action, fuel, toFuel, shield, siphoned, barrel);
+        }
+
+        int[] barrels;
+        if (keyframe) {
+            barrels = new int[((flags & ReplayWriter.BARRELS) != 0) ? in.get() & 0xFF : 0];
+            for (int i = 0; i < barrels.length; i++)
+                barrels[i] = in.get() & 0xFF;
+        } else if ((flags & ReplayWriter.BARRELS) != 0) {
+            int counts = in.get() & 0xFF;
+            int[] added = new int[counts >> 4];
+            int[] removed = new int[counts & 0xF];
+            for (int i = 0; i < added.length; i++)
+                added[i] = in.get() & 0xFF;
+            for (int i = 0; i < removed.length; i++)
+                removed[i] = in.get() & 0xFF;
+            barrels = applyChanges(last, added, removed);
+        } else {
+            barrels = cells(last);
+        }
+        return new WorldSnapshot(turn, barrels, robots[1], robots[2]);
+    }
+
+    private static Match.Result readResult(ByteBuffer in) {
+        int winner = in.get();
+        return new Match.Result(winner, getVarint(in));
+    }
+
+    private static int[] cells(WorldSnapshot snapshot) {
+        int[] cells = new int[snapshot.numBarrels()];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = snapshot.barrelY(i) * World.SIZE + snapshot.barrelX(i);
+        return cells;
+    }
+
+    private static int[] applyChanges(WorldSnapshot last, int[] added, int[] removed) {
+        int[] cells = cells(last);
+        int[] result = Arrays.copyOf(cells, cells.length + added.length);
+        int count = 0;
+        for (int cell : cells) {
+            boolean gone = false;
+            for (int r : removed)
+                gone |= (r == cell);
+            if (!gone)
+                result[count++] = cell;
+        }
+        for (int cell : added)
+            result[count++] = cell;
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    private static int getZigzag(ByteBuffer in) {
+        int value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Sums up an archive of replays by bot: results, fuel collected from barrels
+ * and by siphoning, shield use, and when bots ran out of fuel. The files are
+ * read in parallel, each memory mapped and decoded one turn at a time into
+ * plain counters, so an archive of any size needs little heap.
+ *
+ * Siphons and barrel pickups are recorded in the replay, turn by turn, and
+ * the fuel they bring is counted as Metrics counts it. Shield use counts the turns recorded, so loops skipped by a match's
+ * fast-forward count once.
+ */
+public class ReplayStats {
+
+    private final int threads;
+
+    public ReplayStats(int threads) {
+        this.threads = threads;
+    }
+
+    /** Totals by bot name, for the given replay files */
+    public Map<String, BotStats> run(List<Path> files) {
+        Map<String, BotStats> totals = new TreeMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<BotStats[]>> results = new ArrayList<>();
+            for (Path file : files) {
+                results.add(pool.submit(() -> analyse(file)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                BotStats[] bots;
+                try {
+                    bots = results.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Skipped " + files.get(i) + ": " + e.getCause().getMessage());
+                    continue;
+                }
+                for (int id = 1; id <= 2; id++) {
+                    totals.computeIfAbsent(bots[id].name, BotStats::new).add(bots[id]);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return totals;
+    }
+
+    /** The counts for the two robots of one replay, indexed by id */
+    static BotStats[] analyse(Path file) throws IOException {
+        ReplayReader replay = new ReplayReader(file);
+        BotStats[] bots = { null, new BotStats(replay.getName(1)), new BotStats(replay.getName(2)) };
+        WorldSnapshot[] last = new WorldSnapshot[1];
+        replay.forEach(snapshot -> {
+            WorldSnapshot before = last[0];
+            last[0] = snapshot;
+            if (before == null)
+                return;     // the world before the first turn
+            for (int id = 1; id <= 2; id++) {
+                WorldSnapshot.RobotState robot = snapshot.robot(id);
+                BotStats bot = bots[id];
+                bot.recordedTurns++;
+                if (robot.shield)
+                    bot.shieldTurns++;
+                if (robot.siphoned > 0) {
+                    bot.siphons++;
+                    bot.fuelSiphoned += robot.siphoned;
+                    bot.fuelCollected += Math.min(100, robot.fuel + robot.siphoned) - robot.fuel;
+                }
+                if (robot.barrel) {
+                    bot.barrels++;
+                    bot.fuelCollected += 100 - robot.fuel;
+                }
+            }
+        });
+
+        WorldSnapshot end = last[0];
+        Match.Result result = replay.getResult();
+        for (int id = 1; id <= 2; id++) {
+            BotStats bot = bots[id];
+            bot.matches = 1;
+            bot.turns = (result != null) ? result.turns : end.turn;
+            if (result == null)
+                bot.unfinished++;
+            else if (result.winner == 0)
+                bot.draws++;
+            else if (result.winner == id)
+                bot.wins++;
+            else
+                bot.losses++;
+            if (end.robot(id).toFuel <= 0) {
+                bot.deaths++;
+                bot.deathTurns += end.turn;
+            }
+        }
+        return bots;
+    }
+
+    /** Counts for one bot, summed over matches */
+    public static class BotStats {
+        public final String name;
+        public long matches, wins, losses, draws, unfinished, turns, recordedTurns;
+        public long barrels, siphons, fuelCollected, fuelSiphoned, shieldTurns;
+        public long deaths, deathTurns;
+
+        BotStats(String name) {
+            this.name = name;
+        }
+
+        void add(BotStats other) {
+            matches += other.matches;
+            wins += other.wins;
+            losses += other.losses;
+            draws += other.draws;
+            unfinished += other.unfinished;
+            turns += other.turns;
+            recordedTurns += other.recordedTurns;
+            barrels += other.barrels;
+            siphons += other.siphons;
+            fuelCollected += other.fuelCollected;
+            fuelSiphoned += other.fuelSiphoned;
+            shieldTurns += other.shieldTurns;
+            deaths += other.deaths;
+            deathTurns += other.deathTurns;
+        }
+
+        static final String HEADING = String.format("%-24s %7s %6s %6s %6s %9s %10s %9s %9s %8s %7s %10s",
+                "bot", "matches", "won", "lost", "drawn", "turns", "fuel", "barrels", "siphons", "shield", "deaths", "died on");
+
+        /** A row of the table; fuel, barrels and siphons are per match */
+        public String toString() {
+            double m = Math.max(1, matches);
+            return String.format("%-24s %7d %6d %6d %6d %9.1f %10.1f %9.2f %9.2f %7.1f%% %7d %10.1f",
+                    name, matches, wins, losses, draws, turns / m, fuelCollected / m, barrels / m, siphons / m,
+                    100d * shieldTurns / Math.max(1, recordedTurns), deaths, (double) deathTurns / Math.max(1, deaths));
+        }
+    }
+
+    /**
+     * Usage: ReplayStats directory [threads]
+     * Reads every .replay file in the directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ReplayStats directory [threads]");
+            return;
+        }
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(Paths.get(args[0]))) {
+            files = list.filter(p -> p.toString().endsWith(".replay")).sorted().collect(Collectors.toList());
+        }
+        long start = System.nanoTime();
+        Map<String, BotStats> totals = new ReplayStats(threads).run(files);
+        System.out.println(BotStats.HEADING);
+        for (BotStats bot : totals.values()) {
+            System.out.println(bot);
+        }
+        System.out.printf("%d replays in %.1f ms%n", files.size(), (System.nanoTime() - start) / 1e6);
+    }
+}
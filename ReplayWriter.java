@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a match, one WorldSnapshot per committed turn, into a compact
+ * replay file written through a memory mapped buffer.
+ *
+ * The file starts with a header (magic number, version, seed, and the names
+ * of the two robots' programs as a length byte and UTF-8) and a keyframe
+ * holding the whole state. Every later turn is stored as its difference from
+ * the turn before, which is usually five bytes:
+ *
+ *   flags           byte: BARRELS, GAP, SIPHON1, SIPHON2, BARREL1, BARREL2, KEYFRAME or END
+ *   [gap]           varint: turns skipped since the last record
+ *   robot 1, 2      byte: action | shield << 3 | facing << 4 | moved << 6 | jump << 7
+ *                   [zigzag varint: fuel at the start minus fuel at the end of the last turn, if jump]
+ *                   zigzag varint: fuel used or gained over the turn
+ *                   [varint: fuel siphoned from the other robot, if SIPHON1 or SIPHON2 for this robot]
+ *   [barrels]       byte: added << 4 | removed, then a byte per cell (y * SIZE + x)
+ *
+ * A robot starts a turn where it ended the last one, and moving takes it one
+ * cell the way it faces, so positions need no more than the moved bit.
+ *
+ * BARREL1 and BARREL2 mark a robot picking up a barrel that turn. A keyframe
+ * holds the same siphon and barrel flags, and the siphon amounts after each
+ * robot's fuel. Files before version 4 have no siphon flags, and read as
+ * never siphoning; files before version 5 have no barrel flags, and read as
+ * never picking up a barrel.
+ *
+ * Every KEYFRAME_INTERVAL records the whole state is written again, and
+ * closing the file adds an index of the keyframes (turn and offset, an int
+ * each) and a trailer (number of keyframes, offset of the index, offset of
+ * the END record or -1, magic number; an int each), so that a ReplayReader
+ * can start decoding close to any turn.
+ */
+public class ReplayWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x52425250;    // "RBRP"
+    static final byte VERSION = 5;
+    static final int HEADER = 13, TRAILER = 16;     // HEADER is the part before the names
+    static final int KEYFRAME_INTERVAL = 64;        // records between keyframes
+
+    static final int BARRELS = 1, GAP = 2, SIPHON1 = 4, SIPHON2 = 8, BARREL1 = 16, BARREL2 = 32, KEYFRAME = 64, END = 128;
+
+    private static final int CHUNK = 64 * 1024;     // bytes mapped at a time
+    private static final int MAX_RECORD = 1024;     // more than any record needs
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long mapped;            // file offset of the start of the buffer
+    private WorldSnapshot last;
+    private int lastTurn;
+    private int records;            // since the last keyframe
+    private int[] keyframes = new int[16];  // turn and offset of each keyframe
+    private int numKeyframes;
+    private int end = -1;           // offset of the END record
+
+    public ReplayWriter(Path file, long seed, String name1, String name2) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(seed);
+        putName(name1);
+        putName(name2);
+    }
+
+    /** Record the world before the first turn, or a turn, as a keyframe */
+    public void keyframe(int turn, WorldSnapshot snapshot) {
+        ensureRoom();
+        if (2 * numKeyframes == keyframes.length)
+            keyframes = Arrays.copyOf(keyframes, 2 * keyframes.length);
+        keyframes[2 * numKeyframes] = turn;
+        keyframes[2 * numKeyframes + 1] = offset();
+        numKeyframes++;
+        records = 0;
+        buffer.put((byte) (KEYFRAME | ((snapshot.numBarrels() > 0) ? BARRELS : 0) | robotFlags(snapshot)));
+        putVarint(turn);
+        for (int id = 1; id <= 2; id++) {
+            WorldSnapshot.RobotState robot = snapshot.robot(id);
+            buffer.put((byte) robot.x);
+            buffer.put((byte) robot.y);
+            buffer.put(packed(robot, false));
+            putVarint(robot.fuel);
+            putZigzag(robot.toFuel - robot.fuel);
+            if (robot.siphoned > 0)
+                putVarint(robot.siphoned);
+        }
+        if (snapshot.numBarrels() > 0) {
+            buffer.put((byte) snapshot.numBarrels());
+            for (int i = 0; i < snapshot.numBarrels(); i++) {
+                buffer.put((byte) (snapshot.barrelY(i) * World.SIZE + snapshot.barrelX(i)));
+            }
+        }
+        last = snapshot;
+        lastTurn = turn;
+    }
+
+    /**
+     * Record a committed turn. Turns that a match skipped over are noted as
+     * a gap, with the fuel they used showing up as a jump.
+     */
+    public void turn(int turn, WorldSnapshot snapshot) {
+        if (last == null || ++records >= KEYFRAME_INTERVAL) {
+            keyframe(turn, snapshot);
+            return;
+        }
+        int[] added = difference(snapshot, last);
+        int[] removed = difference(last, snapshot);
+        if (added.length > 15 || removed.length > 15) {
+            keyframe(turn, snapshot);
+            return;
+        }
+        ensureRoom();
+        boolean barrels = added.length > 0 || removed.length > 0;
+        int gap = turn - lastTurn - 1;
+        buffer.put((byte) ((barrels ? BARRELS : 0) | ((gap != 0) ? GAP : 0) | robotFlags(snapshot)));
+        if (gap != 0)
+            putVarint(gap);
+        for (int id = 1; id <= 2; id++) {
+            WorldSnapshot.RobotState robot = snapshot.robot(id);
+            int jump = robot.fuel - last.robot(id).toFuel;
+            buffer.put(packed(robot, jump != 0));
+            if (jump != 0)
+                putZigzag(jump);
+            putZigzag(robot.toFuel - robot.fuel);
+            if (robot.siphoned > 0)
+                putVarint(robot.siphoned);
+        }
+        if (barrels) {
+            buffer.put((byte) (added.length << 4 | removed.length));
+            for (int cell : added)
+                buffer.put((byte) cell);
+            for (int cell : removed)
+                buffer.put((byte) cell);
+        }
+        last = snapshot;
+        lastTurn = turn;
+    }
+
+    /** Record how the match ended */
+    public void end(Match.Result result) {
+        ensureRoom();
+        end = offset();
+        buffer.put((byte) END);
+        buffer.put((byte) result.winner);
+        putVarint(result.turns);
+    }
+
+    /**
+     * Cuts the file to the records written and adds the index, through the
+     * channel rather than the mapping. Once closed the file is finished, and
+     * can be read even while the last mapping is still waiting to be
+     * collected; the writer can not be used again, and closing it again does
+     * nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null)
+            return;
+        int index = offset();
+        buffer.force();
+        buffer = null;      // nothing is written through a mapping from here on
+        channel.truncate(index);
+        ByteBuffer tail = ByteBuffer.allocate(4 * 2 * numKeyframes + TRAILER);
+        for (int i = 0; i < 2 * numKeyframes; i++)
+            tail.putInt(keyframes[i]);
+        tail.putInt(numKeyframes);
+        tail.putInt(index);
+        tail.putInt(end);
+        tail.putInt(MAGIC);
+        tail.flip();
+        while (tail.hasRemaining())
+            channel.write(tail, index + tail.position());
+        channel.close();
+    }
+
+    private static int robotFlags(WorldSnapshot snapshot) {
+        WorldSnapshot.RobotState robot1 = snapshot.robot(1), robot2 = snapshot.robot(2);
+        return ((robot1.siphoned > 0) ? SIPHON1 : 0) | ((robot2.siphoned > 0) ? SIPHON2 : 0)
+               | (robot1.barrel ? BARREL1 : 0) | (robot2.barrel ? BARREL2 : 0);
+    }
+
+    private static byte packed(WorldSnapshot.RobotState robot, boolean jump) {
+        boolean moved = robot.x != robot.toX || robot.y != robot.toY;
+        return (byte) (robot.action | (robot.shield ? 1 << 3 : 0) | robot.facing << 4
+                       | (moved ? 1 << 6 : 0) | (jump ? 1 << 7 : 0));
+    }
+
+    /** The barrel cells in a but not in b; both lists are sorted */
+    private static int[] difference(WorldSnapshot a, WorldSnapshot b) {
+        int[] result = new int[a.numBarrels()];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < a.numBarrels(); i++) {
+            int cell = a.barrelY(i) * World.SIZE + a.barrelX(i);
+            while (j < b.numBarrels() && b.barrelY(j) * World.SIZE + b.barrelX(j) < cell)
+                j++;
+            if (j >= b.numBarrels() || b.barrelY(j) * World.SIZE + b.barrelX(j) != cell)
+                result[count++] = cell;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void putName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 255);
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private int offset() {
+        return (int) (mapped + buffer.position());
+    }
+
+    /** Maps the next part of the file once the buffer is nearly full */
+    private void ensureRoom() {
+        if (buffer.remaining() >= MAX_RECORD)
+            return;
+        try {
+            mapped += buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, mapped, CHUNK);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putZigzag(int value) {
+        putVarint((value << 1) ^ (value >> 31));
+    }
+}
@@ -38,6 +38,9 @@ public class RoboGame extends JFrame {
         createMenus();
         pack();
 
+        Trace.drainTo(System.out);
+        setDebug(debugDisplay);
+
         setLocationRelativeTo(null);
 
         setVisible(true);
@@ -55,6 +58,12 @@ public class RoboGame extends JFrame {
         final JMenu debugMenu = new JMenu("Debug ");
         menu.add(debugMenu);
 
+        final JMenu speedMenu = new JMenu("Speed");
+        menu.add(speedMenu);
+        for (int speed : new int[] { 1, 2, 5, 10, 20, WorldComponent.MAX_SPEED }) {
+            makeMenuItem(speed + "x", speedMenu, (ActionEvent e) -> {worldComp.setSpeed(speed);});
+        }
+
         final JMenuItem load1 = makeMenuItem("Robot 1 (Red)",loadMenu, (ActionEvent e) -> {
                 code1 = getCodeFile();
                 if (code1 != null) {
@@ -92,8 +101,14 @@ public class RoboGame extends JFrame {
                 start.setEnabled(true);
             });
 
-        final JMenuItem debugOn = makeMenuItem("On", debugMenu,(ActionEvent e) -> {debugDisplay = true;});
-        final JMenuItem debugOff = makeMenuItem("Off", debugMenu,(ActionEvent e) -> {debugDisplay = false;});
+        final JMenuItem debugOn = makeMenuItem("On", debugMenu,(ActionEvent e) -> {setDebug(true);});
+        final JMenuItem debugOff = makeMenuItem("Off", debugMenu,(ActionEvent e) -> {setDebug(false);});
+        makeMenuItem("Turn latency", debugMenu, (ActionEvent e) -> {worldComp.printLatency();});
+        makeMenuItem("Replay", menu, (ActionEvent e) -> {
+                JFileChooser chooser = new JFileChooser(".");
+                if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+                    ReplayPlayer.open(chooser.getSelectedFile(), DISPOSE_ON_CLOSE);
+            });
         JMenuItem quit = makeMenuItem("Quit", menu,(ActionEvent e) -> {System.exit(0);});
 
     }
@@ -114,6 +129,12 @@ public class RoboGame extends JFrame {
     }
 
 
+    /** Turn printing what the robots do and sense on or off */
+    public static void setDebug(boolean on) {
+        debugDisplay = on;
+        Trace.setLevel(on ? Trace.SENSORS : Trace.OFF);
+    }
+
     /*
      * Ask the user for a program to load.
      */
@@ -129,7 +150,8 @@ public class RoboGame extends JFrame {
     /**
      * This is the entry point into the program.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Metrics.serveIfAsked();
         new RoboGame();
     }
 }
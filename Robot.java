@@ -5,8 +5,6 @@ import java.awt.Point;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -15,9 +13,6 @@ import java.util.List;
 import java.util.*;
 
 
-import javax.imageio.ImageIO;
-
-
 public class Robot {    
     public Map<String, Integer> variables = new HashMap<>();
     
@@ -25,8 +20,44 @@ public class Robot {
      * Move forward one step.
      */
     public void move() {
-        debug("move");
+        move(1);
+    }
+
+    /**
+     * Move forward the given number of steps, one per turn. The world carries
+     * out the later steps itself, so the program is only woken once they are
+     * all done.
+     */
+    public void move(int steps) {
+        if (steps <= 0)
+            return;
+        trace(Trace.MOVE, 0, steps);
         currentAction = ACTION_MOVE;
+        repeats = steps - 1;
+        if (!world.isHeadless())
+            resolveMove();
+        processFuelAndBlock();
+
+    }
+
+    /**
+     * Work out where a move takes the robot, given where the other robot is
+     * heading.
+     */
+    private void resolveMove() {
+        proposeMove();
+        Robot other = world.getOtherRobot(this);
+        if (other != null) {
+            if (other.targetX == targetX && other.targetY == targetY) {
+                // not allowed to move
+                targetX = x;
+                targetY = y;
+            }
+        }
+    }
+
+    /** The cell in front of the robot, or its own at a wall, before the other robot is considered */
+    private void proposeMove() {
         switch (dir) {
         case NORTH -> { targetY -= 1; }
         case WEST -> { targetX -= 1; }
@@ -37,23 +68,30 @@ public class Robot {
         targetY = Math.max(0, targetY);
         targetX = Math.min(11, targetX);
         targetY = Math.min(11, targetY);
-        Robot other = world.getOtherRobot(this);
-        if (other != null) {
-            if (other.targetX == targetX && other.targetY == targetY) {
-                // not allowed to move
-                targetX = x;
-                targetY = y;
-            }
-        }
-        processFuelAndBlock();
+    }
 
+    /**
+     * Called by a headless world once both robots have proposed their moves:
+     * robots heading for the same cell, or trying to swap cells, both stay
+     * where they are. A robot may follow the other into the cell it leaves.
+     * The rule looks at both robots alike, so neither colour goes first.
+     */
+    static void resolveMoves(Robot a, Robot b) {
+        boolean sameCell = a.targetX == b.targetX && a.targetY == b.targetY;
+        boolean swap = a.targetX == b.x && a.targetY == b.y && b.targetX == a.x && b.targetY == a.y;
+        if (sameCell || swap) {
+            a.targetX = a.x;
+            a.targetY = a.y;
+            b.targetX = b.x;
+            b.targetY = b.y;
+        }
     }
 
     /**
      * Turn 90 degrees to the left
      */
     public void turnLeft() {
-        debug("turnL");
+        trace(Trace.TURN_LEFT, 0, 0);
         currentAction = ACTION_TURN_LEFT;
         switch (dir) {
         case NORTH -> { targetDir = DIRECTION.WEST;}            
@@ -69,7 +107,7 @@ public class Robot {
      * Turn 90 degrees to the right
      */
     public void turnRight() {
-        debug("turnR");
+        trace(Trace.TURN_RIGHT, 0, 0);
         currentAction = ACTION_TURN_RIGHT;
         switch (dir) {
         case NORTH -> {targetDir = DIRECTION.EAST; }
@@ -85,7 +123,7 @@ public class Robot {
      * Turn 180 degrees.
      */
     public void turnAround() {
-        debug("turnAround");
+        trace(Trace.TURN_AROUND, 0, 0);
         currentAction = ACTION_TURN_AROUND;
         switch (dir) {
         case NORTH -> {targetDir = DIRECTION.SOUTH; }
@@ -102,7 +140,9 @@ public class Robot {
      * cannot steal fuel, but this robot will use up fuel faster.
      */
     public void setShield(boolean shield) {
-        debug("shield " + (shield ? "on" : "off"));
+        if (cancelled)
+            throw new RobotInterruptedException();
+        trace(Trace.SHIELD, 0, shield ? 1 : 0);
         this.shield = shield;
         
     }
@@ -111,7 +151,7 @@ public class Robot {
      * Take fuel barrel or siphon fuel from other robot.
      */
     public void takeFuel() {
-        debug("takeFuel");
+        trace(Trace.TAKE_FUEL, 0, 0);
         currentAction = ACTION_TAKE_FUEL;
         processFuelAndBlock();
         
@@ -121,8 +161,19 @@ public class Robot {
      * Do nothing and wait.
      */
     public void idleWait() {
-        debug("wait");
+        idleWait(1);
+    }
+
+    /**
+     * Wait for the given number of turns, without waking the program in
+     * between.
+     */
+    public void idleWait(int turns) {
+        if (turns <= 0)
+            return;
+        trace(Trace.WAIT, 0, turns);
         currentAction = ACTION_WAIT;
+        repeats = turns - 1;
         processFuelAndBlock();
         
     }
@@ -138,6 +189,7 @@ public class Robot {
     public int getDistanceToWall() {
         if (cancelled)
             throw new RobotInterruptedException();
+        sensorCalls[Metrics.WALL_DISTANCE]++;
         switch (dir) {
         case NORTH -> {return y;}
         case SOUTH -> {return 11 - y;}
@@ -154,13 +206,10 @@ public class Robot {
     public int getOpponentLR() {
         if (cancelled)
             throw new RobotInterruptedException();
-        if (otherRobotPos == null) {
-            debug("oppLR=INFINTY");
-            return INFINITY;
-        } else {
-            debug("oppLR=" + otherRobotPos.x);
-            return otherRobotPos.x;
-        }
+        sensorCalls[Metrics.OPPONENT_LR]++;
+        int val = (otherRobotPos == null) ? INFINITY : otherRobotPos.x;
+        trace(Trace.OPPONENT_LR, 0, val);
+        return val;
     }
 
     /**
@@ -170,13 +219,10 @@ public class Robot {
     public int getOpponentFB() {
         if (cancelled)
             throw new RobotInterruptedException();
-        if (otherRobotPos == null) {
-            debug("oppFB=INFINTY");
-            return INFINITY;
-        } else {
-            debug("oppFB=" + otherRobotPos.y);
-            return otherRobotPos.y;
-        }
+        sensorCalls[Metrics.OPPONENT_FB]++;
+        int val = (otherRobotPos == null) ? INFINITY : otherRobotPos.y;
+        trace(Trace.OPPONENT_FB, 0, val);
+        return val;
     }
 
     /**
@@ -185,7 +231,8 @@ public class Robot {
     public int numBarrels() {
         if (cancelled)
             throw new RobotInterruptedException();
-        debug("numBarrels = " + barrels.size());
+        sensorCalls[Metrics.NUM_BARRELS]++;
+        trace(Trace.NUM_BARRELS, 0, barrels.size());
         return barrels.size();
     }
 
@@ -216,8 +263,9 @@ public class Robot {
     public int getBarrelLR(int n) {
         if (cancelled)
             throw new RobotInterruptedException();
+        sensorCalls[Metrics.BARREL_LR]++;
         int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).x;
-        debug(((n == 0) ? "" : (n + "th")) + "closestBarrelLR = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+        trace(Trace.BARREL_LR, n, val);
         return val;
     }
 
@@ -228,8 +276,37 @@ public class Robot {
     public int getBarrelFB(int n) {
         if (cancelled)
             throw new RobotInterruptedException();
+        sensorCalls[Metrics.BARREL_FB]++;
         int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).y;
-        debug(((n == 0) ? "" : (n + "th")) + "closestBarrelFB = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+        trace(Trace.BARREL_FB, n, val);
+        return val;
+    }
+
+    /**
+     * Turns it takes to get onto the nth fuel barrel, moving and turning,
+     * going around the other robot. INFINITY past the last barrel, or if the
+     * other robot stands on it.
+     */
+    public int getBarrelDistance(int n) {
+        if (cancelled)
+            throw new RobotInterruptedException();
+        sensorCalls[Metrics.BARREL_DISTANCE]++;
+        int val = (n >= barrels.size()) ? INFINITY : path(barrels.get(n), false);
+        trace(Trace.BARREL_DISTANCE, n, val);
+        return val;
+    }
+
+    /**
+     * The first action on the way to the nth fuel barrel, as an ACTION_ code:
+     * ACTION_TAKE_FUEL when on it, ACTION_MOVE, or the turn to make. INFINITY
+     * past the last barrel, or if the other robot stands on it.
+     */
+    public int getBarrelAction(int n) {
+        if (cancelled)
+            throw new RobotInterruptedException();
+        sensorCalls[Metrics.BARREL_ACTION]++;
+        int val = (n >= barrels.size()) ? INFINITY : path(barrels.get(n), true);
+        trace(Trace.BARREL_ACTION, n, val);
         return val;
     }
 
@@ -241,7 +318,9 @@ public class Robot {
     public int getFuel() {
         if (cancelled)
             throw new RobotInterruptedException();
-        debug("fuel=" + fuel);
+        sensorCalls[Metrics.FUEL]++;
+        trace(Trace.FUEL, 0, fuel);
+        fuelEvent = true;
         return fuel;
     }
 
@@ -251,7 +330,8 @@ public class Robot {
     public boolean isShieldOn() {
         if (cancelled)
             throw new RobotInterruptedException();
-        debug(shield ? "shield is on" : "shield is off");
+        sensorCalls[Metrics.SHIELD_ON]++;
+        trace(Trace.SHIELD_ON, 0, shield ? 1 : 0);
         return shield;
     }
 
@@ -263,9 +343,11 @@ public class Robot {
         ACTION_TURN_AROUND = 4, ACTION_TAKE_FUEL = 5, ACTION_WAIT = 6,
         INFINITY = Integer.MAX_VALUE;  
 
-    private static final int
+    static final int
         FUEL_IDLE = 3, FUEL_MOVE = 6, FUEL_TURN = 5, FUEL_SHIELD = 15;
 
+    static final int NODE_BUDGET = 1000000;    // nodes evaluated without acting before a program forfeits
+
     private enum DIRECTION { NORTH, WEST, SOUTH, EAST }
 
     private World world;
@@ -273,14 +355,27 @@ public class Robot {
     private List<Point> barrels = new ArrayList<Point>();
     private ProgramNode program;
 
-    private boolean shield, dead, finished, cancelled;
+    private boolean shield, finished, waiting, fuelEvent;
+    private boolean siphoning;  // took fuel this turn where there was no barrel
+    private int siphoned;       // fuel taken from the other robot in the turn being committed
+    private boolean tookBarrel; // picked up a barrel in the turn being committed
+    private boolean forfeited;
+    private volatile boolean cancelled;
     private int fuel = 100, targetFuel;
     private int x, y, targetX, targetY;
     private DIRECTION dir, targetDir;
     //    private int x, y, dir, targetX, targetY, targetDir;
     private int currentAction;
+    private Object site;     // the program node whose action the robot is carrying out
+    private int repeats;     // further turns the current action lasts for
+    private boolean carryingOn;     // this turn repeats the last action, so the program is not woken
     private String colour;
-    private BufferedImage robotImage1, robotImage2, shieldImage;
+    private final int id;
+    private Metrics metrics;
+    private long nodeCount;     // counted on the robot's thread, and handed to metrics each action
+    private final int[] sensorCalls = new int[Metrics.SENSORS.length];
+    private long releasedAt, wokeAt;    // System.nanoTime() of the last commit, and of the robot waking after it
+    private long blockedNanos;          // time spent waiting for turns to be committed
     private boolean noWait = false;
 
     public Robot(World world, int x, int y, String colour, boolean noWait) {
@@ -288,19 +383,14 @@ public class Robot {
         this.x = x;
         this.y = y;
         this.colour = colour;
+        this.id = Arrays.asList(World.COLOURS).indexOf(colour);
+        this.metrics = new Metrics(null);
         this.noWait = noWait;
         targetX = x;
         targetY = y;
         dir = (y < World.SIZE / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
         targetDir = dir;
         targetFuel = fuel;
-        try {
-            robotImage1 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY+"robot_" + colour + "_1.png"));
-            robotImage2 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY+"robot_" + colour + "_2.png"));
-            shieldImage = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY+ "shield.png"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
     private ArrayList<String> history = new ArrayList<>();
@@ -313,11 +403,54 @@ public class Robot {
         program = prog;
     }
 
+    /**
+     * Count this robot's doings towards the totals of the named bot, as well
+     * as for its match. Call before the robot starts.
+     */
+    public void setBot(String name) {
+        metrics = new Metrics(Metrics.forBot(name));
+    }
+
+    /** What this robot has done so far */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Nanoseconds this robot's thread has spent waiting for its turns */
+    long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * Called by each program node as it is executed or evaluated. A program
+     * that evaluates more than NODE_BUDGET nodes without acting forfeits, and
+     * a cancelled one stops here even if it never acts again.
+     */
+    void countNode() {
+        if (++nodeCount > NODE_BUDGET || cancelled) {
+            forfeited = !cancelled;
+            throw new RobotInterruptedException();
+        }
+    }
+
+    /** Whether the program ended by going over NODE_BUDGET */
+    public boolean hasForfeited() {
+        return forfeited;
+    }
+
+    /** Hand the counts kept on the robot's own thread over to metrics */
+    private void flushCounts() {
+        metrics.add(nodeCount, sensorCalls);
+        nodeCount = 0;
+        Arrays.fill(sensorCalls, 0);
+    }
+
     /**
      * Start this robot running. If it has a valid program,, then executes the
      * program, passing in the robot. Otherwise, calls the default program.
      */
     public void run() {
+        wokeAt = System.nanoTime();
         if (program != null) {
             program.execute(this);
         } else {
@@ -342,47 +475,112 @@ public class Robot {
      * @param finished
      */
     public void setFinished(boolean finished) {
-        this.finished = finished;
-        if (finished)
+        flushCounts();
+        synchronized (this) {
+            this.finished = finished;
+            notifyAll();
+        }
+        if (finished && !world.isHeadless())
             updatePending();
     }
 
     /**
-     * Called by the GUI
+     * Called by the world's driver before it commits a turn: blocks until this
+     * robot has chosen its action for the turn, or its program has ended. Returns false if it did neither
+     * within the timeout, or if the calling thread was interrupted, which it
+     * is left marked as.
+     */
+    public synchronized boolean awaitAction(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!waiting && !finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until this robot has chosen its action for the turn, or its
+     * program has ended, which it does within NODE_BUDGET nodes. Returns false
+     * if the calling thread was interrupted first.
+     */
+    public synchronized boolean awaitAction() {
+        while (!waiting && !finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by a headless world when it commits a turn: works out where the
+     * pending action would take the robot and what it costs. The world then
+     * settles moves that meet (see resolveMoves), so a turn depends neither on
+     * thread timing nor on which robot is which colour.
      */
-    public void draw(Graphics2D g2d, double time) {
-        double x = this.x * (1 - time) + targetX * time;
-        double y = this.y * (1 - time) + targetY * time;
+    public void resolveAction() {
+        if (finished && currentAction == 0)
+            currentAction = ACTION_WAIT;
+        if (currentAction == ACTION_MOVE)
+            proposeMove();
+        if (currentAction != 0)
+            processFuel();
+    }
+
+    /**
+     * Called by the GUI, to draw a robot of the given colour the given
+     * fraction of the way through a turn. Works from a snapshot, live or
+     * replayed, never from a robot.
+     */
+    public static void draw(Graphics2D g2d, String colour, WorldSnapshot.RobotState state, double time) {
+        double x = state.x * (1 - time) + state.toX * time;
+        double y = state.y * (1 - time) + state.toY * time;
         x = x * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
         y = y * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
 
-        double angle = getAngle(dir);
+        BufferedImage robotImage1 = Assets.get("robot_" + colour + "_1.png");
+        BufferedImage robotImage2 = Assets.get("robot_" + colour + "_2.png");
+        int currentAction = state.action;
+        double angle = Math.toRadians(90) * state.facing;
         switch (currentAction) {
         case ACTION_TURN_LEFT -> { angle -= Math.toRadians(90) * time; }
         case ACTION_TURN_RIGHT -> { angle += Math.toRadians(90) * time; }
         case ACTION_TURN_AROUND -> { angle += Math.toRadians(180) * time; }
         }
 
-        AffineTransform trans = new AffineTransform();
-        trans.translate(x, y);
-        trans.rotate(angle);
-        trans.translate(-robotImage1.getWidth() / 2d, -robotImage1.getHeight() / 2d);
-
-        if (((int) (time * 10)) % 2 == 0 && currentAction < ACTION_TAKE_FUEL && currentAction > 0) {
-            g2d.drawImage(robotImage2, trans, null);
+        int frame = (((int) (time * 10)) % 2 == 0 && currentAction < ACTION_TAKE_FUEL && currentAction > 0) ? 1 : 0;
+        boolean turning = currentAction >= ACTION_TURN_LEFT && currentAction <= ACTION_TURN_AROUND && time > 0
+            && robotImage1 != null;     // the sprite cache skips a missing image
+        AffineTransform trans;
+        if (turning) {
+            trans = new AffineTransform();
+            trans.translate(x, y);
+            trans.rotate(angle);
+            trans.translate(-robotImage1.getWidth() / 2d, -robotImage1.getHeight() / 2d);
+            g2d.drawImage((frame == 1) ? robotImage2 : robotImage1, trans, null);
         } else {
-            g2d.drawImage(robotImage1, trans, null);
+            SpriteCache sprites = SpriteCache.get("robot_" + colour, robotImage1, robotImage2);
+            sprites.draw(g2d, frame, state.facing, x, y);
         }
 
-        if (shield) {
+        if (state.shield) {
             trans = new AffineTransform();
             trans.translate(x - 25, y - 25);
-            g2d.drawImage(shieldImage, trans, null);
+            g2d.drawImage(Assets.get("shield.png"), trans, null);
         }
 
-        double fuelCurrent = targetFuel * time + fuel * (1 - time);
-        if (fuelCurrent <= 0)
-            dead = true;
+        double fuelCurrent = state.toFuel * time + state.fuel * (1 - time);
 
         // draw fuel indicator
         Arc2D fuelArc = new Arc2D.Double(x - 10, y - 10, 20, 20, -90, 360d * fuelCurrent / 100d, Arc2D.OPEN);
@@ -391,8 +589,68 @@ public class Robot {
         g2d.draw(fuelArc);
     }
 
-    public boolean isDead() {
-        return dead;
+    /**
+     * The robot over the turn being committed, for the world's snapshot.
+     * Called by the world between working out the turn and committing it.
+     */
+    public WorldSnapshot.RobotState getTurnState() {
+        int facing = (int) Math.round(getAngle(dir) / Math.toRadians(90));
+        return new WorldSnapshot.RobotState(x, y, targetX, targetY, facing, currentAction, fuel, targetFuel, shield,
+                                            siphoned, tookBarrel);
+    }
+
+    /** Whether the last committed turn left this robot without fuel */
+    public boolean isOutOfFuel() {
+        return fuel <= 0;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Called by the program nodes before they carry out an action, so that a
+     * headless match can tell where in the program the robot is.
+     */
+    public void setSite(Object node) {
+        site = node;
+    }
+
+    // Used by a headless match to recognise repeating play and skip over it.
+
+    /**
+     * Everything apart from fuel that decides what this robot does from here
+     * on: its position, pending action, place in its program and variables.
+     * Only valid while the robot is waiting for its action to be committed.
+     */
+    public List<Object> getStateKey() {
+        return Arrays.asList(x, y, dir, shield, finished, currentAction, site, repeats, new HashMap<>(variables));
+    }
+
+    /**
+     * Whether the robot has sensed its fuel, or fuel has changed hands, since
+     * the last call.
+     */
+    public boolean takeFuelEvent() {
+        boolean event = fuelEvent;
+        fuelEvent = false;
+        return event;
+    }
+
+    /** The fuel this robot had at the last committed turn */
+    public int getFuelLevel() {
+        return fuel;
+    }
+
+    /** The fuel a finished robot uses each turn */
+    public int getIdleCost() {
+        return FUEL_IDLE + (shield ? FUEL_SHIELD : 0);
+    }
+
+    /** Account for turns that were skipped rather than played */
+    public void skipTurns(int fuelUsed) {
+        fuel -= fuelUsed;
+        targetFuel -= fuelUsed;
     }
 
     private Point getOtherRobotPosition() {
@@ -412,6 +670,25 @@ public class Robot {
         return null;
     }
 
+    /** The inverse of toRelative */
+    private Point toAbsolute(Point p) {
+        switch (dir) {
+        case NORTH -> { return new Point(x + p.x, y - p.y); }
+        case SOUTH -> { return new Point(x - p.x, y + p.y); }
+        case WEST -> { return new Point(x - p.y, y - p.x); }
+        case EAST -> { return new Point(x + p.y, y + p.x); }
+        }
+        return null;
+    }
+
+    /** PathTable's distance to, or first action towards, a barrel given relative to the robot */
+    private int path(Point barrel, boolean action) {
+        Point target = toAbsolute(barrel);
+        Point other = (otherRobotPos == null) ? new Point(-1, -1) : toAbsolute(otherRobotPos);
+        return action ? PathTable.firstAction(x, y, dir.ordinal(), target.x, target.y, other.x, other.y)
+                      : PathTable.distance(x, y, dir.ordinal(), target.x, target.y, other.x, other.y);
+    }
+
     private double getAngle(DIRECTION direction) {
         switch (direction) {
         case NORTH -> {return 0; }
@@ -425,6 +702,7 @@ public class Robot {
     private void processFuel() {
         // use fuel
         targetFuel = fuel;
+        siphoning = false;
         switch (currentAction) {
         case ACTION_MOVE ->        { targetFuel -= FUEL_MOVE; }
         case ACTION_TURN_LEFT->    { targetFuel -= FUEL_TURN; }
@@ -432,59 +710,136 @@ public class Robot {
         case ACTION_TURN_AROUND -> { targetFuel -= FUEL_TURN; }
         case ACTION_WAIT ->        { targetFuel -= FUEL_IDLE; }
         case ACTION_TAKE_FUEL ->   {
-            if (world.getAvailableFuel().contains(new Point(x, y))) {
-                world.getAvailableFuel().remove(new Point(x, y));
+            if (world.removeFuel(new Point(x, y))) {
+                metrics.fuel(100 - targetFuel, 0);
                 targetFuel = 100;
+                tookBarrel = true;
+                fuelEvent = true;
                 return;
-            } else {// try to siphon fuel
-                Robot other = world.getOtherRobot(this);
-                if (other != null && !other.shield) {
-                    Point otherP = getOtherRobotPosition(); // relative position
-                    if (otherP.x == 0 && otherP.y == 1) {
-                        System.out.println("Taking fuel");
-                        int takeFuel = Math.min(25, other.targetFuel / 2);
-                        takeFuel = Math.min(other.targetFuel, takeFuel);
-                        targetFuel = Math.min(100, targetFuel + takeFuel);
-                        other.targetFuel -= takeFuel;
-                        return;
-                    }
-                }
             }
+            // try to siphon fuel, once the world has both robots' costs (see siphon)
+            siphoning = true;
             targetFuel -= FUEL_IDLE; }
         }
         if (shield) targetFuel -= FUEL_SHIELD;
     }
 
+    /**
+     * The fuel this robot siphons from the other one this turn: up to 25, and
+     * up to half of what the other has left after paying for its own action.
+     */
+    int siphonAmount() {
+        Robot other = world.getOtherRobot(this);
+        if (!siphoning || other == null || other.shield)
+            return 0;
+        Point otherP = getOtherRobotPosition(); // relative position
+        if (otherP.x != 0 || otherP.y != 1)
+            return 0;
+        return Math.max(0, Math.min(other.targetFuel, Math.min(25, other.targetFuel / 2)));
+    }
+
+    /**
+     * Called by the world once both robots have worked out their actions'
+     * costs, with what each siphons from the other, so that the two robots
+     * are treated alike whichever of them was resolved first.
+     */
+    void siphon(int gained, int lost) {
+        siphoning = false;
+        siphoned = gained;
+        if (gained > 0) {
+            trace(Trace.SIPHON, 0, gained);
+            metrics.fuel(Math.min(100, fuel + gained) - fuel, gained);
+            targetFuel = Math.min(100, fuel + gained);
+            fuelEvent = true;
+        }
+        if (lost > 0) {
+            targetFuel -= lost;
+            fuelEvent = true;
+        }
+    }
+
     private void processFuelAndBlock() {
         if (cancelled)
             throw new RobotInterruptedException();
+        flushCounts();
+        world.getLatency().think.record(System.nanoTime() - wokeAt);
+        if (world.isHeadless()) {
+            awaitTurn();
+            return;
+        }
         // use fuel
         processFuel();
         if (this.noWait) {
             updatePending();
         } else {
-            while (currentAction != 0) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                }
+            awaitTurn();
+        }
+    }
+
+    /**
+     * Hand the pending action to the world and sleep until it has been
+     * committed.
+     */
+    private synchronized void awaitTurn() {
+        long blockedSince = System.nanoTime();
+        waiting = true;
+        notifyAll();
+        while (waiting && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new RobotInterruptedException();
             }
         }
+        if (cancelled)
+            throw new RobotInterruptedException();
+        wokeAt = System.nanoTime();
+        blockedNanos += wokeAt - blockedSince;
+        world.getLatency().wake.record(wokeAt - releasedAt);
     }
 
     /**
      * Called by the "World"
      */
     public void updatePending() {
+        commitTurn();
+        refreshView();
+    }
+
+    /**
+     * Makes the turn just resolved the robot's current state. The world
+     * commits both robots before refreshing either view, so that neither
+     * robot sees the other where it was before the turn.
+     */
+    void commitTurn() {
         // reset turn
         x = targetX;
         y = targetY;
         dir = targetDir;
         fuel = targetFuel;
-        if (finished) {
+        carryingOn = false;
+        tookBarrel = false;
+        if (finished && !world.isHeadless()) {
             currentAction = ACTION_WAIT;
             processFuel();
         }
+        if (repeats > 0 && !cancelled) {
+            // carry on with a move(n) or wait(n) without waking the program
+            repeats--;
+            if (!world.isHeadless()) {
+                if (currentAction == ACTION_MOVE)
+                    resolveMove();
+                processFuel();
+            }
+            carryingOn = true;
+        }
+    }
+
+    /** What the robot senses of the world, then wakes its program for the next turn */
+    void refreshView() {
+        if (carryingOn)
+            return;
+        repeats = 0;
         otherRobotPos = getOtherRobotPosition();
         barrels = new ArrayList<Point>(world.getAvailableFuel());
         for (int i = 0; i < barrels.size(); i++) {
@@ -497,10 +852,18 @@ public class Robot {
                 public int compare(Point p1, Point p2) {
                     int d1 = Math.abs(p1.x) + Math.abs(p1.y);
                     int d2 = Math.abs(p2.x) + Math.abs(p2.y);
-                    return d1 - d2;
+                    // break ties the same way every time, rather than by the order of the fuel set
+                    if (d1 != d2)
+                        return d1 - d2;
+                    return (p1.y != p2.y) ? p1.y - p2.y : p1.x - p2.x;
                 }
             });
-        currentAction = 0;
+        synchronized (this) {
+            currentAction = 0;
+            waiting = false;
+            releasedAt = System.nanoTime();
+            notifyAll();
+        }
     }
 
     public String toString() {
@@ -508,13 +871,12 @@ public class Robot {
     }
 
     /**
-     * print a message about the action to System.out if debugging is currently
-     * turned on
+     * Record an action or sensor reading in the Trace, if that kind of event
+     * is being traced. Nothing is built when it is not.
      */
-    private void debug(String action) {
-        //        if (RoboGame.debugDisplay && program != null) {
-        System.out.println(colour + " robot: " + action);
-        //}
+    private void trace(int event, int arg, int value) {
+        if (Trace.isOn(event))
+            Trace.record(id, event, arg, value, world.getTurn());
     }
 
     /**
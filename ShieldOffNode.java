@@ -0,0 +1,5 @@
+class ShieldOffNode implements ProgramNode{
+    final String action = "shieldOff;";
+    public String toString(){return action;}
+    public void execute(Robot robot){robot.countNode(); robot.setShield(false);}
+}
@@ -0,0 +1,5 @@
+class ShieldOnNode implements ProgramNode{
+    final String action = "shieldOn;";
+    public String toString(){return action;}
+    public void execute(Robot robot){robot.countNode(); robot.setShield(true);}
+}
@@ -0,0 +1,71 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The animation frames of a sprite, rotated to each of the four facings and
+ * scaled for the screen once, so that drawing a robot that is not turning is
+ * a plain copy of pixels. A HiDPI screen gets its own set of images at its
+ * scale, rather than having the originals scaled up on every frame.
+ */
+public class SpriteCache {
+
+    private static final Map<String, SpriteCache> caches = new ConcurrentHashMap<>();
+
+    private final BufferedImage[] frames;
+    private final Map<Double, BufferedImage[][]> scaled = new HashMap<>();
+
+    private SpriteCache(BufferedImage[] frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * The cache for the named sprite, made from the given frames the first
+     * time it is asked for.
+     */
+    public static SpriteCache get(String name, BufferedImage... frames) {
+        return caches.computeIfAbsent(name, k -> new SpriteCache(frames));
+    }
+
+    /**
+     * Draw a frame centred on (x, y), turned clockwise by the given number of
+     * quarter turns. The position is rounded to whole device pixels. A
+     * missing (null) frame is not drawn.
+     */
+    public void draw(Graphics2D g2d, int frame, int quarterTurns, double x, double y) {
+        if (frames[frame] == null)
+            return;
+        double scale = g2d.getTransform().getScaleX();
+        BufferedImage sprite = sprite(frame, quarterTurns & 3, scale);
+        double left = Math.round((x - frames[frame].getWidth() / 2d) * scale) / scale;
+        double top = Math.round((y - frames[frame].getHeight() / 2d) * scale) / scale;
+        AffineTransform trans = AffineTransform.getTranslateInstance(left, top);
+        trans.scale(1 / scale, 1 / scale);
+        g2d.drawImage(sprite, trans, null);
+    }
+
+    private synchronized BufferedImage sprite(int frame, int quarterTurns, double scale) {
+        BufferedImage[][] images = scaled.computeIfAbsent(scale, k -> new BufferedImage[frames.length][4]);
+        if (images[frame][quarterTurns] == null)
+            images[frame][quarterTurns] = render(frames[frame], quarterTurns, scale);
+        return images[frame][quarterTurns];
+    }
+
+    private static BufferedImage render(BufferedImage image, int quarterTurns, double scale) {
+        int width = (int) Math.ceil(image.getWidth() * scale);
+        int height = (int) Math.ceil(image.getHeight() * scale);
+        BufferedImage sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.rotate(Math.toRadians(90) * quarterTurns, width / 2d, height / 2d);
+        g2d.scale(scale, scale);
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return sprite;
+    }
+}
@@ -0,0 +1,15 @@
+class StatementNode implements ProgramNode{
+    final ProgramNode statement;
+    
+    public StatementNode(ProgramNode p){this.statement = p;}
+   
+    public void execute(Robot robot){
+        robot.countNode();
+        statement.execute(robot);
+    }
+    
+    public String toString(){
+        return statement.toString();
+    }
+    
+}
@@ -0,0 +1,21 @@
+class SubNode implements IntNode{
+    final String operator = "-";
+    IntNode expr1;
+    
+    IntNode expr2;
+    
+    public SubNode(IntNode expr1, IntNode expr2){
+        this.expr1 = expr1;
+        this.expr2 = expr2;
+    }
+    
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        return expr1.evaluate(robot) - expr2.evaluate(robot);
+    }
+    
+    public String toString(){
+        return "sub(" + expr1.toString() + "," + expr2.toString() + ")";
+    }
+}
@@ -0,0 +1,7 @@
+class TakeFuelNode implements ProgramNode{
+    final String action = "takeFuel;";
+    
+    public String toString(){return action;}
+    
+    public void execute(Robot robot) {robot.countNode(); robot.setSite(this); robot.takeFuel();}
+}
@@ -0,0 +1,138 @@
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log of what the robots do and sense, kept as fixed size binary records
+ * (robot, event, a small argument, an int value, and the turn) in a ring
+ * buffer. Recording an event builds no strings and takes no locks; the
+ * records are turned into text later, on a drain thread, and written to a
+ * file or the console.
+ *
+ * Events are only recorded at or below the current level. Callers check
+ * isOn first, so with tracing off an event costs one field read.
+ *
+ * If the drain falls behind by more than the size of the buffer the oldest
+ * records are lost, and the drain says how many.
+ */
+public final class Trace {
+
+    public static final int OFF = 0, ACTIONS = 1, SENSORS = 2;
+
+    // events, with the level each belongs to
+    public static final int
+        MOVE = 1, TURN_LEFT = 2, TURN_RIGHT = 3, TURN_AROUND = 4, TAKE_FUEL = 5, WAIT = 6,
+        SHIELD = 7, SIPHON = 8,
+        OPPONENT_LR = 9, OPPONENT_FB = 10, NUM_BARRELS = 11, BARREL_LR = 12, BARREL_FB = 13,
+        FUEL = 14, SHIELD_ON = 15, BARREL_DISTANCE = 16, BARREL_ACTION = 17;
+    private static final String[] NAMES = {
+        null, "move", "turnL", "turnR", "turnAround", "takeFuel", "wait",
+        "shield", "siphoned",
+        "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB",
+        "fuel", "shieldOn", "barrelDist", "barrelAct" };
+    private static final int[] LEVELS = {
+        OFF, ACTIONS, ACTIONS, ACTIONS, ACTIONS, ACTIONS, ACTIONS,
+        ACTIONS, ACTIONS,
+        SENSORS, SENSORS, SENSORS, SENSORS, SENSORS,
+        SENSORS, SENSORS, SENSORS, SENSORS };
+
+    private static final int CAPACITY = 1 << 14;    // records; a power of two
+    private static final long DRAIN_DELAY = 50;     // ms between drains
+
+    private static volatile int level = OFF;
+
+    // each record is three longs: its sequence number + 1 (written last), the header, and the value
+    private static final AtomicLongArray records = new AtomicLongArray(3 * CAPACITY);
+    private static final AtomicLong next = new AtomicLong();
+    private static long read;       // the next record to drain
+    private static PrintStream out;
+    private static ScheduledExecutorService drain;
+
+    private Trace() {
+    }
+
+    public static void setLevel(int level) {
+        Trace.level = level;
+    }
+
+    /** Whether the given event is recorded at the current level */
+    public static boolean isOn(int event) {
+        return level >= LEVELS[event];
+    }
+
+    /**
+     * Record an event by the given robot id. The argument is a small extra
+     * number, such as which barrel a sensor was asked about.
+     */
+    public static void record(int robot, int event, int arg, int value, int turn) {
+        long seq = next.getAndIncrement();
+        int slot = 3 * (int) (seq & (CAPACITY - 1));
+        records.lazySet(slot, 0);
+        records.lazySet(slot + 1, (long) turn << 32 | (long) (arg & 0xFFFF) << 16 | event << 8 | robot);
+        records.lazySet(slot + 2, value);
+        records.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * Write the records out on a background thread every DRAIN_DELAY ms, to
+     * the given stream; null stops the drain.
+     */
+    public static synchronized void drainTo(PrintStream stream) {
+        if (drain != null) {
+            drain.shutdown();
+            drain = null;
+        }
+        out = stream;
+        if (stream == null)
+            return;
+        drain = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trace drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drain.scheduleWithFixedDelay(Trace::flush, DRAIN_DELAY, DRAIN_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /** Write out every record made so far */
+    public static synchronized void flush() {
+        if (out == null)
+            return;
+        long end = next.get();
+        if (end - read > CAPACITY) {
+            out.println("trace: " + (end - read - CAPACITY) + " records dropped");
+            read = end - CAPACITY;
+        }
+        StringBuilder line = new StringBuilder();
+        for (; read < end; read++) {
+            int slot = 3 * (int) (read & (CAPACITY - 1));
+            long seq = records.get(slot);
+            if (seq < read + 1)
+                break;      // still being written
+            if (seq > read + 1)
+                continue;   // already overwritten
+            long header = records.get(slot + 1);
+            int value = (int) records.get(slot + 2);
+            if (records.get(slot) != read + 1)
+                continue;   // overwritten while it was read
+            line.setLength(0);
+            format(line, header, value);
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    private static void format(StringBuilder line, long header, int value) {
+        int robot = (int) header & 0xFF;
+        int event = (int) (header >> 8) & 0xFF;
+        int arg = (int) (header >> 16) & 0xFFFF;
+        line.append("turn ").append(header >>> 32).append(' ')
+            .append(World.COLOURS[robot]).append(" robot: ").append(NAMES[event]);
+        if (arg != 0)
+            line.append('(').append(arg).append(')');
+        if (event < TURN_LEFT || event > TAKE_FUEL)     // the rest have no value
+            line.append(' ').append((value == Robot.INFINITY) ? "INFINITY" : String.valueOf(value));
+    }
+}
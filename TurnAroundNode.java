@@ -0,0 +1,5 @@
+class TurnAroundNode implements ProgramNode{
+    final String action = "turnAround;";
+    public String toString(){return action;}
+    public void execute(Robot robot){robot.countNode(); robot.setSite(this); robot.turnAround();}
+}
@@ -0,0 +1,8 @@
+class TurnLNode implements ProgramNode{
+    final String action = "turnL;";
+    
+    public String toString(){return action;}
+    
+    public void execute(Robot robot) {robot.countNode(); robot.setSite(this); robot.turnLeft();}
+
+}
@@ -0,0 +1,46 @@
+import java.io.PrintStream;
+
+/**
+ * Where the time of each turn goes, as a LatencyHistogram per stage:
+ *
+ *   turn     one commit to the next, the whole of a turn
+ *   commit   World.updateWorld committing the turn
+ *   wake     a robot's thread waking after the commit released it
+ *   think    a robot's program running from waking to its next action
+ *   frame    the committed turn first reaching paintComponent (GUI only)
+ *
+ * Each world keeps its own; a Match adds them to the process totals when
+ * it ends.
+ */
+public class TurnLatency {
+
+    private static final TurnLatency process = new TurnLatency();
+
+    public final LatencyHistogram turn = new LatencyHistogram();
+    public final LatencyHistogram commit = new LatencyHistogram();
+    public final LatencyHistogram wake = new LatencyHistogram();
+    public final LatencyHistogram think = new LatencyHistogram();
+    public final LatencyHistogram frame = new LatencyHistogram();
+
+    /** The totals of every match played in this process */
+    public static TurnLatency process() {
+        return process;
+    }
+
+    public void add(TurnLatency other) {
+        turn.add(other.turn);
+        commit.add(other.commit);
+        wake.add(other.wake);
+        think.add(other.think);
+        frame.add(other.frame);
+    }
+
+    public void print(PrintStream out) {
+        out.println("turn    " + turn);
+        out.println("commit  " + commit);
+        out.println("wake    " + wake);
+        out.println("think   " + think);
+        if (frame.getCount() > 0)
+            out.println("frame   " + frame);
+    }
+}
@@ -0,0 +1,8 @@
+class TurnRNode implements ProgramNode{
+    final String action = "turnR;";
+    
+    public String toString(){return action;}
+    
+    public void execute(Robot robot) {robot.countNode(); robot.setSite(this); robot.turnRight();}
+    
+}
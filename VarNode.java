@@ -0,0 +1,22 @@
+class VarNode implements IntNode{
+    String name;
+    public VarNode(String name){
+        this.name = name;
+    }
+    
+    public int evaluate(Robot robot){
+        robot.countNode();
+        if (robot.variables.containsKey(this.name)){
+            return robot.variables.get(this.name);
+        }
+        else{
+            robot.variables.put(this.name, 0);
+            return 0;
+        }
+    }
+    
+    public String toString(){
+        return name;
+    }
+    
+}
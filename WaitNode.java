@@ -0,0 +1,7 @@
+class WaitNode implements ProgramNode{
+    final String action = "wait;";
+    
+    public String toString(){return action;}
+    
+    public void execute(Robot robot) {robot.countNode(); robot.setSite(this); robot.idleWait();}
+}
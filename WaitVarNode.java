@@ -0,0 +1,20 @@
+class WaitVarNode implements ProgramNode{
+    IntNode expr;
+    
+    public WaitVarNode(IntNode expr){
+        this.expr = expr;
+    }
+    
+    public void execute(Robot robot){
+        robot.countNode();
+        
+        int numTimes = expr.evaluate(robot);
+        robot.setSite(this);
+        robot.idleWait(numTimes);
+        
+    }
+    
+    public String toString(){
+         return "wait(" + expr.toString() + ");";
+     }
+}
@@ -0,0 +1,7 @@
+class WallDistNode implements IntNode{
+    public int evaluate(Robot robot){robot.countNode(); return robot.getDistanceToWall();}
+    
+    public String toString(){
+        return "wallDist";
+    }
+}
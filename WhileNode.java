@@ -0,0 +1,11 @@
+class WhileNode implements ProgramNode{
+    BooleanNode condition;
+    ProgramNode block;
+    
+    public WhileNode(BooleanNode condition, ProgramNode block){this.condition = condition; this.block = block;}
+    public void execute(Robot robot){robot.countNode(); while (condition.evaluate(robot)){block.execute(robot);}}
+    
+    public String toString(){
+        return "while (" + condition.toString() + ")" + block.toString();
+    }
+}
@@ -3,6 +3,7 @@ import java.awt.Point;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -11,6 +12,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.Scanner;
 
 /** Simulation of the robots in their world */
@@ -18,23 +21,86 @@ import java.util.Scanner;
 public class World {
 
     public static final int SIZE = 12;
+    public static final String[] COLOURS = { null, "red", "blue" };    // by robot id
+    private static final AtomicLong worlds = new AtomicLong();
+    private static final LongAdder robotAllocations = new LongAdder();
+    private static final int MAX_FAILURE_REPORTS = 10;     // failing programs printed, after which they are only counted
+    private static final AtomicLong failuresReported = new AtomicLong();
 
     protected Set<Point> availableFuel = Collections.newSetFromMap(new ConcurrentHashMap<Point, Boolean>());
-    private Random rand = new Random();
+    private volatile WorldSnapshot snapshot;
+    private int turn;
+    private long lastCommit;    // System.nanoTime() at the end of the last commit
+    private WorldRandom rand;
     protected Robot[] robots;
+    private final Thread[] threads = new Thread[3];     // running the robots' programs, by robot id
+    private final boolean headless;
+    private final TurnLatency latency = new TurnLatency();
+    private final long id = worlds.incrementAndGet();     // tells apart the worlds of one process in GameEvents
+    private final long seed;
 
     public World() {
-        robots = new Robot[] { null, new Robot(this, 0, 0, "red", false), new Robot(this, SIZE - 1, SIZE - 1, "blue", false) };
+        this(new Random().nextLong(), false);
+    }
+
+    /**
+     * A world whose fuel drops are fixed by the seed. A headless world is
+     * stepped by a Match rather than by the GUI timer: robots hand their actions
+     * over instead of playing them out, and the world resolves them together
+     * when it commits the turn, so the same seed always gives the same match,
+     * whichever colour each program plays.
+     */
+    public World(long seed, boolean headless) {
+        this.rand = new WorldRandom(seed);
+        this.seed = seed;
+        this.headless = headless;
+        robots = new Robot[] { null, new Robot(this, 0, 0, COLOURS[1], false), new Robot(this, SIZE - 1, SIZE - 1, COLOURS[2], false) };
+        if (!headless) {
+            // a match names its bots; the GUI counts them by colour
+            robots[1].setBot(COLOURS[1]);
+            robots[2].setBot(COLOURS[2]);
+        }
+        publish(robots[1].getTurnState(), robots[2].getTurnState());
+    }
+
+    public boolean isHeadless() {
+        return headless;
     }
 
     /**
      * This world can no longer be used after this call.
      */
     public void reset() {
+        GameEvents.MatchEnd event = new GameEvents.MatchEnd();
+        if (event.shouldCommit()) {
+            event.world = id;
+            event.turns = turn;
+            event.fuel1 = snapshot.robot(1).toFuel;
+            event.fuel2 = snapshot.robot(2).toFuel;
+            event.commit();
+        }
         availableFuel.clear();
         for (int i = 1; i <= 2; i++) {
             robots[i].updatePending();
             robots[i].cancel();
+            robots[i].getMetrics().played();
+        }
+    }
+
+    /**
+     * Waits, after reset, for the robots' threads to end, so that what they
+     * did (such as the bytes they allocated) has all been counted. Returns at
+     * once if the world was never started, or if the calling thread is
+     * interrupted, which it is left marked as.
+     */
+    public void awaitRobots() {
+        try {
+            for (int i = 1; i <= 2; i++) {
+                if (threads[i] != null)
+                    threads[i].join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -42,23 +108,124 @@ public class World {
         return availableFuel;
     }
 
+    /** Takes the barrel at p, if there is one */
+    public boolean removeFuel(Point p) {
+        return availableFuel.remove(p);
+    }
+
     public void updateWorld() {
+        long start = System.nanoTime();
+        GameEvents.TurnCommit event = new GameEvents.TurnCommit();
+        event.begin();
+        if (headless) {
+            for (int i = 1; i <= 2; i++) {
+                robots[i].resolveAction();
+            }
+            Robot.resolveMoves(robots[1], robots[2]);
+        }
+        int siphon1 = robots[1].siphonAmount(), siphon2 = robots[2].siphonAmount();
+        robots[1].siphon(siphon1, siphon2);
+        robots[2].siphon(siphon2, siphon1);
+        WorldSnapshot.RobotState robot1 = robots[1].getTurnState();
+        WorldSnapshot.RobotState robot2 = robots[2].getTurnState();
+        robots[1].getMetrics().turn(robot1.action, robot1.toFuel > 0);
+        robots[2].getMetrics().turn(robot2.action, robot2.toFuel > 0);
         addFuel(false);
+        // both robots move before either looks around
         for (int i = 1; i <= 2; i++) {
-            robots[i].updatePending();
+            robots[i].commitTurn();
+        }
+        for (int i = 1; i <= 2; i++) {
+            robots[i].refreshView();
+        }
+        turn++;
+        publish(robot1, robot2);
+        long end = System.nanoTime();
+        latency.commit.record(end - start);
+        if (lastCommit != 0)
+            latency.turn.record(end - lastCommit);
+        lastCommit = end;
+        event.end();
+        if (event.shouldCommit()) {
+            event.world = id;
+            event.turn = turn;
+            event.barrels = availableFuel.size();
+            event.commit();
         }
+        // enabled apart from TurnCommit, so each checks its own settings
+        commitAction(1, robot1);
+        commitAction(2, robot2);
+    }
+
+    private void commitAction(int robot, WorldSnapshot.RobotState state) {
+        GameEvents.Action event = new GameEvents.Action();
+        if (event.shouldCommit()) {
+            event.world = id;
+            event.turn = turn;
+            event.robot = COLOURS[robot];
+            event.action = (state.action > 0) ? Metrics.ACTIONS[state.action] : "none";
+            event.x = state.toX;
+            event.y = state.toY;
+            event.fuel = state.toFuel;
+            event.fuelDelta = state.toFuel - state.fuel;
+            event.shield = state.shield;
+            event.commit();
+        }
+    }
+
+    /**
+     * The last committed turn. Safe to call from any thread, and the snapshot
+     * never changes.
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** How long the stages of this world's turns have taken */
+    public TurnLatency getLatency() {
+        return latency;
+    }
+
+    /**
+     * Bytes allocated by the threads of every robot that has ended so far in
+     * this process, or 0 if the JVM does not measure them.
+     */
+    public static long getRobotAllocations() {
+        return robotAllocations.sum();
+    }
+
+    /** Bytes allocated so far by the calling thread, or 0 if not measured */
+    static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+            return Math.max(0, threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+        return 0;
+    }
+
+    /** Turns committed so far */
+    public int getTurn() {
+        return turn;
+    }
+
+    private void publish(WorldSnapshot.RobotState robot1, WorldSnapshot.RobotState robot2) {
+        int[] barrels = availableFuel.stream().mapToInt(p -> p.y * SIZE + p.x).sorted().toArray();
+        snapshot = new WorldSnapshot(turn, barrels, robot1, robot2);
     }
 
     public void loadRobotProgram(int id, File code) {
         try{
             Scanner scanner = new Scanner(code);
             ProgramNode prog = new Parser().parse(scanner);
+            CostAnalysis cost = new CostAnalysis(prog);
             if (prog == null) {
                 System.out.println("Robot " + id + " was given an empty program and ignored it.");
             }
+            else if (cost.isStuck()) {
+                System.out.println("Robot " + id + " was given a program that never acts and ignored it: " + cost);
+            }
             else {
                 System.out.println("Robot " + id + " now has program: ");
                 System.out.println(prog);
+                System.out.println("Cost: " + cost);
                 robots[id].setProgram(prog);
             }
         }
@@ -72,24 +239,44 @@ public class World {
     }
 
     public void start() {
+        GameEvents.MatchStart event = new GameEvents.MatchStart();
+        if (event.shouldCommit()) {
+            event.world = id;
+            event.seed = seed;
+            event.headless = headless;
+            event.commit();
+        }
         // add some initial fuel
         if (availableFuel.isEmpty()) {
             addFuel(true);
             addFuel(true);
+            publish(snapshot.robot(1), snapshot.robot(2));
+        }
+        for (int i = 1; i <= 2; i++) {
+            robots[i].getMetrics().playing(id, COLOURS[i]);
+        }
+        for (int i = 1; i <= 2; i++) {
+            Robot robot = robots[i];
+            String colour = COLOURS[i];
+            Thread thread = new Thread(() -> {
+                    try {
+                        robot.run();
+                    } catch (RobotInterruptedException e) {
+                    } catch (RuntimeException e) {
+                        // in a headless match a failing program just ends, like any other finished program
+                        if (!headless)
+                            throw e;
+                        robot.getMetrics().programFailed();
+                        if (failuresReported.getAndIncrement() < MAX_FAILURE_REPORTS)
+                            System.err.println("Robot " + colour + " in world " + id + " failed: " + e);
+                    }
+                    robot.setFinished(true);
+                    robotAllocations.add(allocatedBytes());
+            });
+            thread.setDaemon(headless);
+            threads[i] = thread;
+            thread.start();
         }
-        new Thread(()-> {
-                try {robots[1].run();}
-                catch (RobotInterruptedException e) {}
-                robots[1].setFinished(true);
-        }).start();
-        
-        new Thread(() -> {
-                try {
-                    robots[2].run();
-                } catch (RobotInterruptedException e) {
-                }
-                robots[2].setFinished(true);
-        }).start();
     }
 
     public Robot getRobot(int id) {
@@ -108,13 +295,31 @@ public class World {
         return null;
     }
 
+    /** A copy of the random state that decides the coming fuel drops */
+    public WorldRandom copyRandom() {
+        return rand.copy();
+    }
+
+    /** Called by a headless match after it has skipped turns */
+    public void setRandom(WorldRandom rand) {
+        this.rand = rand;
+    }
+
     private void addFuel(boolean definitely) {
+        Point fuel = nextFuelDrop(rand, definitely);
+        if (fuel != null) {
+            availableFuel.add(fuel);
+        }
+    }
+
+    /** Where the next fuel drop lands, or null if there is none this turn */
+    static Point nextFuelDrop(Random rand, boolean definitely) {
         if (definitely || rand.nextDouble() < 0.2) {
             int x = rand.nextInt(12);
             int y = rand.nextInt(12);
-            Point fuel = new Point(x, y);
-            availableFuel.add(fuel);
+            return new Point(x, y);
         }
+        return null;
     }
     
 }
@@ -1,57 +1,202 @@
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.Line2D;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
-import javax.imageio.ImageIO;
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 @SuppressWarnings("serial")
 public class WorldComponent extends JComponent {
 
     public static final int GRID_SIZE = 50;
-    private static final int ANIMATION_DELAY = 20;
-    private static final int WORLD_UPDATE_DELAY = 33;
-    private BufferedImage fuelImage;
-    private World world;
-    private Timer timer;
+    public static final int MAX_SPEED = 50;
+    private static final int ANIMATION_DELAY = 20;      // ms between frames
+    private static final int TURN_LENGTH = 660;         // ms a turn lasts at normal speed
+    private static final long ACTION_TIMEOUT = 500;     // ms a turn waits for a robot to choose its action
+    private volatile World world;
+    private Timer timer;                                // draws the frames
+    private ScheduledExecutorService simulation;        // commits the turns
+    private ScheduledFuture<?> turns;
+    private int speed = 1;
+    private volatile long turnStart, turnLength;        // when the last turn was committed, and how long turns last, in ns
+    private volatile int startedTurn;                   // the snapshot turn that turnStart belongs to
+    private int paintedTurn = -1;                       // the last turn a frame was painted of
 
-    private int tick = 0;
+    // a replay, shown instead of the world if set
+    private ReplayReader replay;
+    private volatile WorldSnapshot replayFrame;
+    private volatile int replayTurn;
+    private IntConsumer replayListener;
+
+    // the grid and the barrels, redrawn only when the barrels change
+    private BufferedImage background;
+    private double backgroundScale;
+    private WorldSnapshot backgroundSnapshot;
+
+    private Rectangle lastDirty;    // where the robots were painted last tick
+    private WorldSnapshot lastSnapshot;
 
     public WorldComponent() {
         super();
         world = new World();
         setPreferredSize(new Dimension(600, 600));
-
-        try {
-            fuelImage = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY+"fuel.png"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
+    /**
+     * Start the match. The turns are played on their own thread at a fixed
+     * rate, and the frames are drawn on another, so a slow frame does not
+     * hold up the match.
+     */
     public void start() {
+        lastDirty = null;
         timer = new Timer();
         timer.schedule(new AnimationTask(), 0, ANIMATION_DELAY);
         world.start();
+        simulation = Executors.newSingleThreadScheduledExecutor();
+        scheduleTurns();
     }
 
     public void reset() {
-        if (timer != null)
-            timer.cancel();
+        stop();
         world.reset();
         world = new World();
+        paintedTurn = -1;
+    }
+
+    /**
+     * Show a recorded match instead of the world, starting at its first turn.
+     * The listener is told on the EDT each time the turn shown changes.
+     */
+    public void showReplay(ReplayReader replay, IntConsumer listener) {
+        stop();
+        this.replay = replay;
+        replayListener = listener;
+        seek(replay.getFirstTurn());
+        lastDirty = null;
+        timer = new Timer();
+        timer.schedule(new AnimationTask(), 0, ANIMATION_DELAY);
+        simulation = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /** Show the given turn of the replay as it ended, without animating it */
+    public void seek(int turn) {
+        showTurn(Math.max(replay.getFirstTurn(), Math.min(replay.getLastTurn(), turn)), false);
+    }
+
+    public int getReplayTurn() {
+        return replayTurn;
+    }
+
+    /** Step through the replay, a turn at a time at the current speed, or stop */
+    public void playReplay(boolean play) {
+        if (turns != null)
+            turns.cancel(false);
+        if (play)
+            scheduleTurns();
+    }
+
+    public boolean isReplayPlaying() {
+        return turns != null && !turns.isDone();
+    }
+
+    private void showTurn(int turn, boolean animate) {
+        WorldSnapshot frame = replay.snapshot(turn);
+        replayTurn = turn;
+        turnStart = (animate && frame.turn == turn) ? System.nanoTime() : 0;  // a skipped turn shows the last one still
+        startedTurn = frame.turn;
+        replayFrame = frame;
+        if (replayListener != null)
+            SwingUtilities.invokeLater(() -> replayListener.accept(turn));
+    }
+
+    /**
+     * Play the match at the given multiple of the normal speed, from 1 to
+     * MAX_SPEED. Every turn is still played; they just come round sooner.
+     */
+    public void setSpeed(int speed) {
+        this.speed = Math.max(1, Math.min(MAX_SPEED, speed));
+        if (simulation != null && !simulation.isShutdown() && turns != null && !turns.isDone()) {
+            // the turn being played, if any, finishes first on the same thread
+            turns.cancel(false);
+            scheduleTurns();
+        }
+    }
+
+    private void scheduleTurns() {
+        long period = TimeUnit.MILLISECONDS.toMicros(TURN_LENGTH) / speed;
+        turnLength = TimeUnit.MICROSECONDS.toNanos(period);
+        turns = simulation.scheduleAtFixedRate(this::playTurn, period, period, TimeUnit.MICROSECONDS);
+    }
+
+    /** Stop playing turns and drawing frames */
+    public void stop() {
+        if (timer != null)
+            timer.cancel();
+        if (simulation != null)
+            simulation.shutdownNow();
+    }
+
+    /**
+     * Commit one turn, once both robots have chosen their action. A robot that
+     * is still thinking after ACTION_TIMEOUT misses the turn.
+     */
+    private void playTurn() {
+        if (replay != null) {
+            if (replayTurn >= replay.getLastTurn()) {
+                turns.cancel(false);
+                if (replayListener != null)
+                    SwingUtilities.invokeLater(() -> replayListener.accept(replayTurn));
+            } else {
+                showTurn(replayTurn + 1, true);
+            }
+            return;
+        }
+        World world = this.world;
+        for (int i = 1; i <= 2; i++) {
+            world.getRobot(i).awaitAction(ACTION_TIMEOUT);
+        }
+        if (Thread.currentThread().isInterrupted() || world != this.world)
+            return;     // stopped, or given another world, while waiting
+        world.updateWorld();
+        turnStart = System.nanoTime();
+        startedTurn = world.getSnapshot().turn;
+
+        boolean r1dead = world.getRobot(1).isOutOfFuel();
+        boolean r2dead = world.getRobot(2).isOutOfFuel();
+        if (r1dead || r2dead) {
+            String msg = (r1dead && r2dead) ? "Both robots" : r1dead ? "Robot 1 (red)" : "Robot 2 (blue)";
+            SwingUtilities.invokeLater(() -> {
+                repaint();
+                printLatency();
+                JOptionPane.showMessageDialog(null, msg + " ran out of fuel!");
+            });
+            stop();
+        }
+    }
+
+    /** Print how long the stages of the match's turns have taken */
+    public void printLatency() {
+        System.out.println("Turn latency:");
+        world.getLatency().print(System.out);
     }
 
     public void loadRobotProgram(int rob, File code) {
@@ -61,65 +206,115 @@ public class WorldComponent extends JComponent {
     @Override
     protected void paintComponent(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
+        WorldSnapshot snapshot = currentSnapshot();
+        if (replay == null && snapshot.turn == startedTurn && snapshot.turn != paintedTurn) {
+            world.getLatency().frame.record(System.nanoTime() - turnStart);
+            paintedTurn = snapshot.turn;
+        }
+        double scale = g2d.getTransform().getScaleX();
+        updateBackground(snapshot, scale);
+        g2d.drawImage(background, AffineTransform.getScaleInstance(1 / scale, 1 / scale), null);
+
+        drawRobots(g2d, snapshot, getTimeRatio(snapshot));
+    }
+
+    private WorldSnapshot currentSnapshot() {
+        return (replay != null) ? replayFrame : world.getSnapshot();
+    }
+
+    /**
+     * Redraw the cached grid and barrels if the barrels have changed. The
+     * image is kept at the screen's scale, so that on a HiDPI screen it is
+     * copied rather than scaled up.
+     */
+    private void updateBackground(WorldSnapshot snapshot, double scale) {
+        if (background != null && backgroundScale == scale && snapshot.sameBarrels(backgroundSnapshot))
+            return;
+        if (background == null || backgroundScale != scale) {
+            int size = (int) Math.ceil(600 * scale);
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            background = (gc != null) ? gc.createCompatibleImage(size, size, Transparency.TRANSLUCENT)
+                                      : new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        }
+        backgroundScale = scale;
+        backgroundSnapshot = snapshot;
+
+        Graphics2D g2d = background.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, background.getWidth(), background.getHeight());
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.scale(scale, scale);
+        drawGrid(g2d, snapshot);
+        g2d.dispose();
+    }
+
+    /**
+     * Draw the grid and the barrels of a snapshot. Used for the cached
+     * background here, and by FrameExporter.
+     */
+    static void drawGrid(Graphics2D g2d, WorldSnapshot snapshot) {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
 
         g2d.setColor(Color.BLACK);
         g2d.setStroke(new BasicStroke(2));
-
         for (int i = 0; i <= World.SIZE; i++) {
-            Line2D hline = new Line2D.Double(0, i * GRID_SIZE, 600, i * GRID_SIZE);
-            Line2D vline = new Line2D.Double(i * GRID_SIZE, 0, i * GRID_SIZE, 600);
-            g2d.draw(hline);
-            g2d.draw(vline);
+            g2d.drawLine(0, i * GRID_SIZE, 600, i * GRID_SIZE);
+            g2d.drawLine(i * GRID_SIZE, 0, i * GRID_SIZE, 600);
         }
 
-        for (Point fuel : world.getAvailableFuel()) {
-            int x = fuel.x * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
-            int y = fuel.y * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
+        BufferedImage fuelImage = Assets.get("fuel.png");
+        for (int i = 0; fuelImage != null && i < snapshot.numBarrels(); i++) {
+            int x = snapshot.barrelX(i) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
+            int y = snapshot.barrelY(i) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
             g2d.drawImage(fuelImage, x, y, null);
         }
+    }
 
+    /**
+     * Draw both robots the given fraction of the way through the snapshot's
+     * turn.
+     */
+    static void drawRobots(Graphics2D g2d, WorldSnapshot snapshot, double time) {
+        // only the robots are drawn at an angle
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
         for (int i = 1; i <= 2; i++) {
-            Robot rob;
-            if ((rob = world.getRobot(i)) != null)
-                rob.draw(g2d, getTimeRatio());
+            Robot.draw(g2d, World.COLOURS[i], snapshot.robot(i), time);
+        }
+    }
+
+    /**
+     * Repaint what has changed since the last tick: the whole world if the
+     * barrels have, otherwise just where the robots were and are now.
+     */
+    private void repaintChanges() {
+        WorldSnapshot snapshot = currentSnapshot();
+        Rectangle dirty = snapshot.robot(1).getDrawBounds().union(snapshot.robot(2).getDrawBounds());
+        if (lastDirty == null || !snapshot.sameBarrels(lastSnapshot)) {
+            repaint();
+        } else {
+            repaint(dirty.union(lastDirty));
         }
+        lastDirty = dirty;
+        lastSnapshot = snapshot;
     }
 
     /**
-     * what fraction of the current "frame" are we at
-     * (a frame lasts WORLD_UPDATE_DELAY ticks)
+     * what fraction of the snapshot's turn has passed, going by the clock
+     * (stays at 1 if the next turn is late)
      */
-    private double getTimeRatio() {
-        int base = tick / WORLD_UPDATE_DELAY;
-        return (double) tick / WORLD_UPDATE_DELAY - base;  
+    private double getTimeRatio(WorldSnapshot snapshot) {
+        if (snapshot.turn != startedTurn)
+            return 0;   // the turn has only just been committed
+        double time = (double) (System.nanoTime() - turnStart) / turnLength;
+        return Math.max(0, Math.min(1, time));
     }
 
     private class AnimationTask extends TimerTask {
 
-        public AnimationTask() {
-            tick = 0;
-        }
-
         @Override
         public void run() {
-            // test for any deaths
-            boolean r1dead = world.getRobot(1).isDead();
-            boolean r2dead = world.getRobot(2).isDead();
-            if (r1dead || r2dead) {
-                timer.cancel();
-                timer = null;
-                String msg = (r1dead && r2dead) ? "Both robots" : r1dead ? "Robot 1 (red)" : "Robot 2 (blue)";
-                JOptionPane.showMessageDialog(null, msg + " ran out of fuel!");
-                return;
-            }
-
-            tick++;
-            if (tick % WORLD_UPDATE_DELAY == 0)
-                world.updateWorld();
-            repaint();
+            repaintChanges();
         }
     }
 }
@@ -0,0 +1,34 @@
+import java.util.Random;
+
+/**
+ * Gives the same numbers as java.util.Random, but its state can be copied, so
+ * a headless match can look ahead at the coming fuel drops and rewind.
+ */
+@SuppressWarnings("serial")
+public class WorldRandom extends Random {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL, MASK = (1L << 48) - 1;
+
+    private long state;     // no initialiser: the Random constructor has already set it through setSeed
+
+    public WorldRandom(long seed) {
+        super(seed);
+    }
+
+    public WorldRandom copy() {
+        WorldRandom copy = new WorldRandom(0);
+        copy.state = state;
+        return copy;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
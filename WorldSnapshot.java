@@ -0,0 +1,89 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * The world as it was over one committed turn, for code that only watches
+ * it: the GUI, and anything that records or counts what happens. The world
+ * makes a new snapshot after each turn and publishes it through a volatile
+ * reference, and a snapshot never changes once made, so readers need no
+ * locks and never see a turn half committed.
+ */
+public final class WorldSnapshot {
+
+    public final int turn;          // turns played so far
+    private final int[] barrels;    // cells holding a barrel after the turn, as y * SIZE + x, in order
+    private final RobotState[] robots;
+
+    WorldSnapshot(int turn, int[] barrels, RobotState robot1, RobotState robot2) {
+        this.turn = turn;
+        this.barrels = barrels;
+        this.robots = new RobotState[] { null, robot1, robot2 };
+    }
+
+    public int numBarrels() {
+        return barrels.length;
+    }
+
+    public int barrelX(int n) {
+        return barrels[n] % World.SIZE;
+    }
+
+    public int barrelY(int n) {
+        return barrels[n] / World.SIZE;
+    }
+
+    /** Whether the two snapshots have barrels in the same places */
+    public boolean sameBarrels(WorldSnapshot other) {
+        return other != null && Arrays.equals(barrels, other.barrels);
+    }
+
+    /** The robot with the given id (1 or 2) */
+    public RobotState robot(int id) {
+        return robots[id];
+    }
+
+    /**
+     * One robot over the turn: where it started and ended, the action it
+     * took, its fuel before and after, what it siphoned, and whether it
+     * picked up a barrel.
+     */
+    public static final class RobotState {
+        public final int x, y, toX, toY;
+        public final int facing;        // quarter turns clockwise from north, at the start of the turn
+        public final int action;        // one of the Robot.ACTION_ constants, or 0 for none
+        public final int fuel, toFuel;
+        public final boolean shield;
+        public final int siphoned;      // fuel taken from the other robot this turn
+        public final boolean barrel;    // picked up a barrel this turn
+
+        RobotState(int x, int y, int toX, int toY, int facing, int action, int fuel, int toFuel, boolean shield,
+                   int siphoned, boolean barrel) {
+            this.x = x;
+            this.y = y;
+            this.toX = toX;
+            this.toY = toY;
+            this.facing = facing;
+            this.action = action;
+            this.fuel = fuel;
+            this.toFuel = toFuel;
+            this.shield = shield;
+            this.siphoned = siphoned;
+            this.barrel = barrel;
+        }
+
+        /**
+         * The part of the GUI the robot is drawn on during this turn: the
+         * cells it moves between, with room for the corners of the turning
+         * image.
+         */
+        public Rectangle getDrawBounds() {
+            int size = WorldComponent.GRID_SIZE;
+            int margin = size / 4;
+            int left = Math.min(x, toX) * size - margin;
+            int top = Math.min(y, toY) * size - margin;
+            int right = (Math.max(x, toX) + 1) * size + margin;
+            int bottom = (Math.max(y, toY) + 1) * size + margin;
+            return new Rectangle(left, top, right - left, bottom - top);
+        }
+    }
+}